@@ -0,0 +1,113 @@
+package it.gabry25.flatwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.PorterDuff;
+
+import it.gabry25.flatwatchface.core.DrawTarget;
+
+/**
+ * {@link DrawTarget} drawing on an Android canvas with the objects of {@link FaceResources}.
+ * Layers are drawn through a second canvas bound to the layer bitmap.
+ */
+class CanvasDrawTarget implements DrawTarget {
+    private final FaceResources mResources;
+    private final Canvas mLayerCanvas = new Canvas();
+    private Canvas mFrameCanvas;
+    private Canvas mCanvas;
+
+    CanvasDrawTarget(FaceResources resources) {
+        mResources = resources;
+    }
+
+    /**
+     * Sets the canvas of the frame being drawn.
+     */
+    void setCanvas(Canvas canvas) {
+        mFrameCanvas = canvas;
+        mCanvas = canvas;
+    }
+
+    @Override
+    public void beginLayer(int layer) {
+        mLayerCanvas.setBitmap(mResources.getWritableLayer(layer));
+        mCanvas = mLayerCanvas;
+    }
+
+    @Override
+    public void endLayer() {
+        mLayerCanvas.setBitmap(null);
+        mCanvas = mFrameCanvas;
+    }
+
+    @Override
+    public void drawLayer(int layer, float left, float top) {
+        mCanvas.drawBitmap(mResources.getLayer(layer), left, top, null);
+    }
+
+    /**
+     * Draws a whole frame, e.g. one rendered ahead of time.
+     */
+    void drawBitmap(Bitmap bitmap) {
+        mCanvas.drawBitmap(bitmap, 0, 0, null);
+    }
+
+    @Override
+    public void drawColor(int color) {
+        mCanvas.drawColor(color, PorterDuff.Mode.SRC);
+    }
+
+    @Override
+    public void drawBackground() {
+        mResources.getBackground().draw(mCanvas);
+    }
+
+    @Override
+    public void drawComplication(int slot, long timeMs) {
+        mResources.getComplication(slot).draw(mCanvas, timeMs);
+    }
+
+    @Override
+    public void drawText(char[] text, float x, float y, int paint) {
+        GlyphAtlas atlas = mResources.getGlyphAtlas(paint);
+        if (atlas == null || !atlas.draw(mCanvas, text, x, y, mResources.getPaint(paint)))
+            mCanvas.drawText(text, 0, text.length, x, y, mResources.getPaint(paint));
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        mCanvas.drawLine(startX, startY, stopX, stopY, mResources.getPaint(paint));
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, int paint) {
+        mCanvas.drawOval(left, top, right, bottom, mResources.getPaint(paint));
+    }
+
+    @Override
+    public void drawArc(float left, float top, float right, float bottom,
+                        float startAngle, float sweepAngle, int paint) {
+        mCanvas.drawArc(left, top, right, bottom, startAngle, sweepAngle, false,
+                mResources.getPaint(paint));
+    }
+
+    @Override
+    public void save() {
+        mCanvas.save();
+    }
+
+    @Override
+    public void rotate(float degrees, float px, float py) {
+        mCanvas.rotate(degrees, px, py);
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        mCanvas.translate(dx, dy);
+    }
+
+    @Override
+    public void restore() {
+        mCanvas.restore();
+    }
+}
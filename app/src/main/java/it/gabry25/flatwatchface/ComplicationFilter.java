@@ -0,0 +1,196 @@
+package it.gabry25.flatwatchface;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.graphics.drawable.Icon;
+import android.os.Build;
+import android.support.wearable.complications.ComplicationData;
+import android.support.wearable.complications.ComplicationText;
+import android.text.TextUtils;
+
+/**
+ * Decides which complication updates reach the drawables. An update that shows the same
+ * content as the applied one is dropped; an update that comes sooner than the minimum
+ * interval of its slot is held back and applied when the interval expires, replaced by any
+ * newer update in the meantime. A change of type is always applied right away.
+ * Only touched on the UI thread.
+ */
+class ComplicationFilter {
+    /**
+     * Ranged values closer than this fraction of the range look the same on the face.
+     */
+    private static final float RANGE_RESOLUTION = 1f / 100;
+
+    private final Context mContext;
+    private final long[] mIntervalMs;
+    private final long[] mAmbientIntervalMs;
+    private final ComplicationData[] mApplied;
+    private final ComplicationData[] mPending;
+    private final long[] mAppliedAtMs;
+    private final int[] mIdenticalCounts;
+    private final int[] mDeferredCounts;
+    private final int[] mSupersededCounts;
+
+    /**
+     * @param intervalsMs        minimum interval between updates of each slot in interactive
+     *                           mode; slots past the end use the last entry
+     * @param ambientIntervalsMs the same in ambient mode
+     */
+    ComplicationFilter(Context context, int slots, int[] intervalsMs, int[] ambientIntervalsMs) {
+        mContext = context;
+        mIntervalMs = new long[slots];
+        mAmbientIntervalMs = new long[slots];
+        for (int i = 0; i < slots; ++i) {
+            mIntervalMs[i] = intervalsMs[Math.min(i, intervalsMs.length - 1)];
+            mAmbientIntervalMs[i] = ambientIntervalsMs[Math.min(i, ambientIntervalsMs.length - 1)];
+        }
+        mApplied = new ComplicationData[slots];
+        mPending = new ComplicationData[slots];
+        mAppliedAtMs = new long[slots];
+        mIdenticalCounts = new int[slots];
+        mDeferredCounts = new int[slots];
+        mSupersededCounts = new int[slots];
+    }
+
+    /**
+     * Offers an update of {@code slot}.
+     *
+     * @param nowMs {@link android.os.SystemClock#elapsedRealtime()}
+     * @return whether the update has to be applied now
+     */
+    boolean offer(int slot, ComplicationData data, boolean ambient, long nowMs) {
+        ComplicationData applied = mApplied[slot];
+        if (mPending[slot] != null) {
+            ++mSupersededCounts[slot];
+            mPending[slot] = null;
+        }
+        if (applied != null && sameContent(applied, data, System.currentTimeMillis())) {
+            ++mIdenticalCounts[slot];
+            return false;
+        }
+        if (applied != null && applied.getType() == data.getType()
+                && nowMs - mAppliedAtMs[slot] < interval(slot, ambient)) {
+            ++mDeferredCounts[slot];
+            mPending[slot] = data;
+            return false;
+        }
+        onApplied(slot, data, nowMs);
+        return true;
+    }
+
+    /**
+     * Returns the held back update of {@code slot} if its interval expired, and marks it as
+     * applied.
+     */
+    ComplicationData takeDue(int slot, boolean ambient, long nowMs) {
+        ComplicationData data = mPending[slot];
+        if (data == null || nowMs - mAppliedAtMs[slot] < interval(slot, ambient))
+            return null;
+        onApplied(slot, data, nowMs);
+        return data;
+    }
+
+    /**
+     * Milliseconds until the first held back update is due, or -1 if there is none.
+     */
+    long getNextDueDelay(boolean ambient, long nowMs) {
+        long delay = -1;
+        for (int i = 0; i < mPending.length; ++i) {
+            if (mPending[i] == null)
+                continue;
+            long due = Math.max(mAppliedAtMs[i] + interval(i, ambient) - nowMs, 0);
+            if (delay < 0 || due < delay)
+                delay = due;
+        }
+        return delay;
+    }
+
+    int getSlotCount() {
+        return mApplied.length;
+    }
+
+    /**
+     * Number of updates of {@code slot} dropped because they showed the applied content.
+     */
+    int getIdenticalCount(int slot) {
+        return mIdenticalCounts[slot];
+    }
+
+    /**
+     * Number of updates of {@code slot} held back by the minimum interval.
+     */
+    int getDeferredCount(int slot) {
+        return mDeferredCounts[slot];
+    }
+
+    /**
+     * Number of held back updates of {@code slot} replaced by a newer one before being shown.
+     */
+    int getSupersededCount(int slot) {
+        return mSupersededCounts[slot];
+    }
+
+    private void onApplied(int slot, ComplicationData data, long nowMs) {
+        mApplied[slot] = data;
+        mPending[slot] = null;
+        mAppliedAtMs[slot] = nowMs;
+    }
+
+    private long interval(int slot, boolean ambient) {
+        return ambient ? mAmbientIntervalMs[slot] : mIntervalMs[slot];
+    }
+
+    /**
+     * Whether {@code a} and {@code b} look the same at {@code timeMs}, and will keep looking
+     * the same.
+     */
+    private boolean sameContent(ComplicationData a, ComplicationData b, long timeMs) {
+        if (a.getType() != b.getType() || a.getImageStyle() != b.getImageStyle()
+                || a.getStartTime() != b.getStartTime() || a.getEndTime() != b.getEndTime())
+            return false;
+        if (a.getType() == ComplicationData.TYPE_RANGED_VALUE) {
+            float range = Math.abs(a.getMaxValue() - a.getMinValue());
+            if (a.getMinValue() != b.getMinValue() || a.getMaxValue() != b.getMaxValue()
+                    || Math.abs(a.getValue() - b.getValue()) > range * RANGE_RESOLUTION)
+                return false;
+        }
+        return sameText(a.getShortText(), b.getShortText(), timeMs)
+                && sameText(a.getShortTitle(), b.getShortTitle(), timeMs)
+                && sameText(a.getLongText(), b.getLongText(), timeMs)
+                && sameText(a.getLongTitle(), b.getLongTitle(), timeMs)
+                && sameIcon(a.getIcon(), b.getIcon())
+                && sameIcon(a.getBurnInProtectionIcon(), b.getBurnInProtectionIcon())
+                && sameIcon(a.getSmallImage(), b.getSmallImage())
+                && sameIcon(a.getBurnInProtectionSmallImage(), b.getBurnInProtectionSmallImage())
+                && sameTapAction(a.getTapAction(), b.getTapAction());
+    }
+
+    /**
+     * Texts that change with time, like countdowns, are never considered the same: they may
+     * only coincide at {@code timeMs}.
+     */
+    private boolean sameText(ComplicationText a, ComplicationText b, long timeMs) {
+        if (a == null || b == null)
+            return a == b;
+        return a.getNextChangeTime(timeMs) == Long.MAX_VALUE
+                && b.getNextChangeTime(timeMs) == Long.MAX_VALUE
+                && TextUtils.equals(a.getText(mContext, timeMs), b.getText(mContext, timeMs));
+    }
+
+    /**
+     * Only resource icons can be compared cheaply, and the accessors are public since P.
+     * Any other icon is considered changed.
+     */
+    private static boolean sameIcon(Icon a, Icon b) {
+        if (a == null || b == null)
+            return a == b;
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P
+                && a.getType() == Icon.TYPE_RESOURCE && b.getType() == Icon.TYPE_RESOURCE
+                && a.getResId() == b.getResId()
+                && TextUtils.equals(a.getResPackage(), b.getResPackage());
+    }
+
+    private static boolean sameTapAction(PendingIntent a, PendingIntent b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -0,0 +1,144 @@
+package it.gabry25.flatwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Icon;
+import android.os.Handler;
+import android.support.wearable.complications.ComplicationData;
+
+/**
+ * Replaces the images of complication data with bitmaps from {@link IconCache}, scaled for
+ * the slot, so the drawable does not load and scale them again on every update. While the
+ * images of an update are being decoded the slot keeps showing the previous data.
+ * Only touched on the UI thread.
+ */
+class ComplicationImages {
+    private static final int IMAGE_ICON = 0;
+    private static final int IMAGE_BURN_IN_ICON = 1;
+    private static final int IMAGE_SMALL_IMAGE = 2;
+    private static final int IMAGE_BURN_IN_SMALL_IMAGE = 3;
+    private static final int IMAGE_COUNT = 4;
+
+    interface Callback {
+        /**
+         * Called on the UI thread with the data to apply to {@code slot}.
+         */
+        void onImagesReady(int slot, ComplicationData data);
+    }
+
+    private final IconCache mCache;
+    private final Handler mHandler;
+    private final Callback mCallback;
+    private final ComplicationData[] mSources;
+    private final int[] mWidths;
+    private final int[] mHeights;
+    // Images of the update being resolved for each slot.
+    private final Bitmap[][] mBitmaps;
+    private final int[] mMissing;
+    private final int[] mGenerations;
+
+    ComplicationImages(IconCache cache, Handler handler, int slots, Callback callback) {
+        mCache = cache;
+        mHandler = handler;
+        mCallback = callback;
+        mSources = new ComplicationData[slots];
+        mWidths = new int[slots];
+        mHeights = new int[slots];
+        mBitmaps = new Bitmap[slots][IMAGE_COUNT];
+        mMissing = new int[slots];
+        mGenerations = new int[slots];
+    }
+
+    /**
+     * Sets the size images of {@code slot} are scaled to, and resolves its data again if the
+     * size changed.
+     */
+    void setSlotSize(int slot, int width, int height) {
+        if (width == mWidths[slot] && height == mHeights[slot])
+            return;
+        mWidths[slot] = width;
+        mHeights[slot] = height;
+        if (mSources[slot] != null)
+            update(slot, mSources[slot]);
+    }
+
+    /**
+     * Resolves the images of {@code data}: the callback is called right away if they are all
+     * cached, when they are decoded otherwise.
+     */
+    void update(int slot, ComplicationData data) {
+        mSources[slot] = data;
+        final int generation = ++mGenerations[slot];
+        Bitmap[] bitmaps = mBitmaps[slot];
+        int missing = 0;
+        for (int i = 0; i < IMAGE_COUNT; ++i) {
+            Icon icon = getImage(data, i);
+            bitmaps[i] = icon != null && mWidths[slot] > 0
+                    ? mCache.peek(icon, mWidths[slot], mHeights[slot]) : null;
+            if (icon != null && bitmaps[i] == null && mWidths[slot] > 0)
+                ++missing;
+        }
+        mMissing[slot] = missing;
+        if (missing == 0) {
+            deliver(slot);
+            return;
+        }
+        for (int i = 0; i < IMAGE_COUNT; ++i) {
+            Icon icon = getImage(data, i);
+            if (icon == null || bitmaps[i] != null)
+                continue;
+            final int s = slot;
+            final int image = i;
+            mCache.load(icon, mWidths[slot], mHeights[slot], mHandler, new IconCache.Callback() {
+                @Override
+                public void onIconLoaded(Bitmap bitmap) {
+                    if (generation != mGenerations[s])
+                        return;
+                    mBitmaps[s][image] = bitmap;
+                    if (--mMissing[s] == 0)
+                        deliver(s);
+                }
+            });
+        }
+    }
+
+    /**
+     * Applies the resolved images of {@code slot}; images that could not be loaded are left
+     * to the drawable.
+     */
+    private void deliver(int slot) {
+        ComplicationData data = mSources[slot];
+        Bitmap[] bitmaps = mBitmaps[slot];
+        if (bitmaps[IMAGE_ICON] != null || bitmaps[IMAGE_BURN_IN_ICON] != null
+                || bitmaps[IMAGE_SMALL_IMAGE] != null
+                || bitmaps[IMAGE_BURN_IN_SMALL_IMAGE] != null) {
+            ComplicationData.Builder builder = new ComplicationData.Builder(data);
+            if (bitmaps[IMAGE_ICON] != null)
+                builder.setIcon(Icon.createWithBitmap(bitmaps[IMAGE_ICON]));
+            if (bitmaps[IMAGE_BURN_IN_ICON] != null)
+                builder.setBurnInProtectionIcon(
+                        Icon.createWithBitmap(bitmaps[IMAGE_BURN_IN_ICON]));
+            if (bitmaps[IMAGE_SMALL_IMAGE] != null)
+                builder.setSmallImage(Icon.createWithBitmap(bitmaps[IMAGE_SMALL_IMAGE]));
+            if (bitmaps[IMAGE_BURN_IN_SMALL_IMAGE] != null)
+                builder.setBurnInProtectionSmallImage(
+                        Icon.createWithBitmap(bitmaps[IMAGE_BURN_IN_SMALL_IMAGE]));
+            data = builder.build();
+        }
+        for (int i = 0; i < IMAGE_COUNT; ++i)
+            bitmaps[i] = null;
+        mCallback.onImagesReady(slot, data);
+    }
+
+    private static Icon getImage(ComplicationData data, int image) {
+        switch (image) {
+            case IMAGE_ICON:
+                return data.getIcon();
+            case IMAGE_BURN_IN_ICON:
+                return data.getBurnInProtectionIcon();
+            case IMAGE_SMALL_IMAGE:
+                return data.getSmallImage();
+            default:
+                return data.getBurnInProtectionSmallImage();
+        }
+    }
+}
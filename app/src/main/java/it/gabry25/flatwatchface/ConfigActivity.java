@@ -3,6 +3,10 @@ package it.gabry25.flatwatchface;
 import android.app.Activity;
 import android.content.ComponentName;
 import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Color;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
@@ -11,24 +15,21 @@ import android.support.wearable.complications.ComplicationProviderInfo;
 import android.support.wearable.complications.ProviderChooserIntent;
 import android.support.wearable.complications.ProviderInfoRetriever;
 import android.view.View;
+import android.widget.FrameLayout;
 import android.widget.ImageButton;
 import android.widget.ImageView;
+import android.widget.TextView;
 
+import it.gabry25.flatwatchface.core.FaceLayout;
+
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class ConfigActivity extends Activity implements View.OnClickListener {
 
     static final int COMPLICATION_CONFIG_REQUEST_CODE = 1234;
-
-    /**
-     * Used by associated watch face ({@link FlatWatchFace}) to let this
-     * configuration Activity know which complication locations are supported, their ids, and
-     * supported complication data types.
-     */
-
-    private int mLeftComplicationId = FlatWatchFace.getLeftComplicationId();
-    private int mCenterComplicationId = FlatWatchFace.getCenterComplicationId();
-    private int mRightComplicationId = FlatWatchFace.getRightComplicationId();
+    // How often the frame published by the watch face is checked.
+    private static final long SNAPSHOT_POLL_MS = 1000;
 
     // Selected complication id by user.
     private int mSelectedComplicationId = -1;
@@ -39,16 +40,53 @@ public class ConfigActivity extends Activity implements View.OnClickListener {
     // Required to retrieve complication data from watch face for preview.
     private ProviderInfoRetriever mProviderInfoRetriever;
 
-    private ImageView mLeftComplicationBackground;
-    private ImageView mCenterComplicationBackground;
-    private ImageView mRightComplicationBackground;
+    /**
+     * The only background thread of the activity, shared by the retriever and the cache,
+     * and shut down with it.
+     */
+    private ExecutorService mExecutor;
+
+    // Last known providers, shown until the retriever answers.
+    private ProviderInfoCache mProviderInfoCache;
+    // Slots already showing the retrieved provider.
+    private boolean[] mRetrieved;
 
-    private ImageButton mLeftComplication;
-    private ImageButton mCenterComplication;
-    private ImageButton mRightComplication;
+    /**
+     * Preview of every complication slot of the associated watch face ({@link FlatWatchFace}),
+     * indexed by complication id and placed from the same layout as on the watch.
+     */
+    private ImageView[] mComplicationBackgrounds;
+    private ImageButton[] mComplications;
 
     private Drawable mDefaultAddComplicationDrawable;
 
+    /**
+     * Name of the theme of the face, see {@link FacePalette}. The watch face listens to
+     * {@link #mPreferences} and switches theme on its own.
+     */
+    private TextView mThemeView;
+    private String[] mThemeNames;
+    private SharedPreferences mPreferences;
+
+    /**
+     * Shows the last frame of the running watch face, from {@link FrameSnapshot}, or the
+     * default background if there is none.
+     */
+    private ImageView mPreviewBackground;
+    private FrameSnapshot.Reader mSnapshotReader;
+    private final Runnable mPollSnapshot = new Runnable() {
+        @Override
+        public void run() {
+            Bitmap frame = mSnapshotReader.poll();
+            if (frame != null) {
+                // The frame is the whole screen, like the preview without its padding.
+                mPreviewBackground.setPadding(0, 0, 0, 0);
+                mPreviewBackground.setImageBitmap(frame);
+            }
+            mPreviewBackground.postDelayed(this, SNAPSHOT_POLL_MS);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -59,41 +97,127 @@ public class ConfigActivity extends Activity implements View.OnClickListener {
 
         mWatchFaceComponentName = new ComponentName(getApplicationContext(), FlatWatchFace.class);
 
-        // Sets up left complication preview.
-        mLeftComplicationBackground = findViewById(R.id.left_complication_background);
-        mLeftComplication = findViewById(R.id.left_complication);
-        mLeftComplication.setOnClickListener(this);
-        // Sets default as "Add Complication" icon.
-        mLeftComplication.setImageDrawable(mDefaultAddComplicationDrawable);
-        mLeftComplicationBackground.setVisibility(View.INVISIBLE);
-
-        // Sets up center complication preview.
-        mCenterComplicationBackground = findViewById(R.id.center_complication_background);
-        mCenterComplication = findViewById(R.id.center_complication);
-        mCenterComplication.setOnClickListener(this);
-        // Sets default as "Add Complication" icon.
-        mCenterComplication.setImageDrawable(mDefaultAddComplicationDrawable);
-        mCenterComplicationBackground.setVisibility(View.INVISIBLE);
-
-        // Sets up right complication preview.
-        mRightComplicationBackground = findViewById(R.id.right_complication_background);
-        mRightComplication = findViewById(R.id.right_complication);
-        mRightComplication.setOnClickListener(this);
-        // Sets default as "Add Complication" icon.
-        mRightComplication.setImageDrawable(mDefaultAddComplicationDrawable);
-        mRightComplicationBackground.setVisibility(View.INVISIBLE);
-
-        mProviderInfoRetriever = new ProviderInfoRetriever(getApplicationContext(),
-                Executors.newCachedThreadPool());
+        setUpComplicationViews();
+
+        mPreferences = FacePalette.getPreferences(this);
+        mThemeNames = getResources().getStringArray(R.array.palette_names);
+        mThemeView = findViewById(R.id.theme);
+        mThemeView.setOnClickListener(this);
+        showTheme(FacePalette.getTheme(mPreferences, getResources()));
+
+        mPreviewBackground = findViewById(R.id.watch_face_background);
+        mSnapshotReader = FrameSnapshot.openReader();
+
+        mExecutor = Executors.newSingleThreadExecutor();
+        // Queued before the retriever, so the cached providers show first.
+        loadCachedComplicationsData();
+        mProviderInfoRetriever = new ProviderInfoRetriever(getApplicationContext(), mExecutor);
         mProviderInfoRetriever.init();
         retrieveInitialComplicationsData();
 
     }
 
+    /**
+     * Adds a preview of every complication slot, at the position the watch face gives it
+     * scaled down to the preview.
+     */
+    private void setUpComplicationViews() {
+        Resources res = getResources();
+        // The background of the preview stands for the whole screen.
+        int size = res.getDimensionPixelSize(R.dimen.preview_width);
+        float scale = size / (float) res.getDisplayMetrics().widthPixels;
+        FaceLayout layout = FlatWatchFace.createLayout(
+                res.getDimension(R.dimen.minute_circle_offset) * scale,
+                (int) (res.getDimension(R.dimen.center_vertical_offset) * scale));
+        layout.layout(size, size);
+        FrameLayout preview = findViewById(R.id.watch_face_preview);
+        int[] complicationIds = FlatWatchFace.getComplicationIds();
+        mComplicationBackgrounds = new ImageView[complicationIds.length];
+        mComplications = new ImageButton[complicationIds.length];
+        mRetrieved = new boolean[complicationIds.length];
+        int iconSize = 0;
+        for (int id : complicationIds) {
+            ImageView background = new ImageView(this);
+            background.setImageResource(R.drawable.added_complication);
+            background.setImportantForAccessibility(View.IMPORTANT_FOR_ACCESSIBILITY_NO);
+            background.setVisibility(View.INVISIBLE);
+            preview.addView(background, slotParams(layout, id));
+            ImageButton complication = new ImageButton(this);
+            complication.setBackgroundColor(Color.TRANSPARENT);
+            complication.setScaleType(ImageView.ScaleType.FIT_CENTER);
+            complication.setTag(id);
+            complication.setOnClickListener(this);
+            // Sets default as "Add Complication" icon.
+            complication.setImageDrawable(mDefaultAddComplicationDrawable);
+            preview.addView(complication, slotParams(layout, id));
+            mComplicationBackgrounds[id] = background;
+            mComplications[id] = complication;
+            iconSize = Math.max(iconSize, layout.getSlotRight(id) - layout.getSlotLeft(id));
+        }
+        mProviderInfoCache = new ProviderInfoCache(this, iconSize);
+    }
+
+    private static FrameLayout.LayoutParams slotParams(FaceLayout layout, int slot) {
+        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(
+                layout.getSlotRight(slot) - layout.getSlotLeft(slot),
+                layout.getSlotBottom(slot) - layout.getSlotTop(slot));
+        params.leftMargin = layout.getSlotLeft(slot);
+        params.topMargin = layout.getSlotTop(slot);
+        return params;
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mPollSnapshot.run();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mPreviewBackground.removeCallbacks(mPollSnapshot);
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        mSnapshotReader.close();
         mProviderInfoRetriever.release();
+        // Pending cache writes still complete, then the thread ends.
+        mExecutor.shutdown();
+    }
+
+    private void loadCachedComplicationsData() {
+        final int[] complicationIds = FlatWatchFace.getComplicationIds();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (final int id : complicationIds) {
+                    final ProviderInfoCache.Entry entry = mProviderInfoCache.read(id);
+                    if (entry == null)
+                        continue;
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!isDestroyed() && !mRetrieved[id])
+                                showCachedProvider(id, entry);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private void showCachedProvider(int complicationId, ProviderInfoCache.Entry entry) {
+        if (entry.mName != null) {
+            if (entry.mIcon != null)
+                mComplications[complicationId].setImageBitmap(entry.mIcon);
+            mComplications[complicationId].setContentDescription(entry.mName);
+            mComplicationBackgrounds[complicationId].setVisibility(View.VISIBLE);
+        } else {
+            mComplications[complicationId].setImageDrawable(mDefaultAddComplicationDrawable);
+            mComplicationBackgrounds[complicationId].setVisibility(View.INVISIBLE);
+        }
     }
 
     public void retrieveInitialComplicationsData() {
@@ -111,12 +235,26 @@ public class ConfigActivity extends Activity implements View.OnClickListener {
 
     @Override
     public void onClick(View view) {
-        if (view.equals(mLeftComplication))
-            launchComplicationHelperActivity(mLeftComplicationId);
-        else if (view.equals(mCenterComplication))
-            launchComplicationHelperActivity(mCenterComplicationId);
-        else if (view.equals(mRightComplication))
-            launchComplicationHelperActivity(mRightComplicationId);
+        if (view == mThemeView) {
+            selectNextTheme();
+            return;
+        }
+        Object complicationId = view.getTag();
+        if (complicationId instanceof Integer)
+            launchComplicationHelperActivity((Integer) complicationId);
+    }
+
+    private void selectNextTheme() {
+        Resources res = getResources();
+        int theme = (FacePalette.getTheme(mPreferences, res) + 1)
+                % FacePalette.getThemeCount(res);
+        mPreferences.edit().putInt(FacePalette.KEY_THEME, theme).apply();
+        // the preview follows with the next frame published by the watch face
+        showTheme(theme);
+    }
+
+    private void showTheme(int theme) {
+        mThemeView.setText(mThemeNames[theme]);
     }
 
     // Verifies the watch face supports the complication location, then launches the helper
@@ -136,35 +274,33 @@ public class ConfigActivity extends Activity implements View.OnClickListener {
         }
     }
 
-    public void updateComplicationViews(int watchFaceComplicationId,
-                                        ComplicationProviderInfo complicationProviderInfo) {
-        if (watchFaceComplicationId == mLeftComplicationId) {
-            if (complicationProviderInfo != null) {
-                mLeftComplication.setImageIcon(complicationProviderInfo.providerIcon);
-                mLeftComplicationBackground.setVisibility(View.VISIBLE);
-
-            } else {
-                mLeftComplication.setImageDrawable(mDefaultAddComplicationDrawable);
-                mLeftComplicationBackground.setVisibility(View.INVISIBLE);
-            }
-        } else if (watchFaceComplicationId == mCenterComplicationId) {
-            if (complicationProviderInfo != null) {
-                mCenterComplication.setImageIcon(complicationProviderInfo.providerIcon);
-                mCenterComplicationBackground.setVisibility(View.VISIBLE);
-
-            } else {
-                mCenterComplication.setImageDrawable(mDefaultAddComplicationDrawable);
-                mCenterComplicationBackground.setVisibility(View.INVISIBLE);
-            }
-        } else if (watchFaceComplicationId == mRightComplicationId) {
-            if (complicationProviderInfo != null) {
-                mRightComplication.setImageIcon(complicationProviderInfo.providerIcon);
-                mRightComplicationBackground.setVisibility(View.VISIBLE);
-
-            } else {
-                mRightComplication.setImageDrawable(mDefaultAddComplicationDrawable);
-                mRightComplicationBackground.setVisibility(View.INVISIBLE);
-            }
+    /**
+     * Shows the provider of a slot, as retrieved or chosen, and stores it in the cache.
+     */
+    public void updateComplicationViews(final int watchFaceComplicationId,
+                                        final ComplicationProviderInfo complicationProviderInfo) {
+        if (watchFaceComplicationId < 0 || watchFaceComplicationId >= mComplications.length)
+            return;
+        mRetrieved[watchFaceComplicationId] = true;
+        if (complicationProviderInfo != null) {
+            mComplications[watchFaceComplicationId].setImageIcon(
+                    complicationProviderInfo.providerIcon);
+            mComplications[watchFaceComplicationId].setContentDescription(
+                    complicationProviderInfo.providerName);
+            mComplicationBackgrounds[watchFaceComplicationId].setVisibility(View.VISIBLE);
+        } else {
+            mComplications[watchFaceComplicationId].setImageDrawable(
+                    mDefaultAddComplicationDrawable);
+            mComplications[watchFaceComplicationId].setContentDescription(null);
+            mComplicationBackgrounds[watchFaceComplicationId].setVisibility(View.INVISIBLE);
+        }
+        if (!mExecutor.isShutdown()) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mProviderInfoCache.write(watchFaceComplicationId, complicationProviderInfo);
+                }
+            });
         }
     }
 
@@ -0,0 +1,180 @@
+package it.gabry25.flatwatchface;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+
+import it.gabry25.flatwatchface.core.DrawTarget;
+
+/**
+ * The paints of the interactive face in one theme of {@code R.array.palettes}: hour tick,
+ * minute arc, ring, time, date, tap feedback and seconds dot, and the tint of the background.
+ * A palette never changes once built, so one per theme is shared by every engine and thread,
+ * see {@link RenderResourcePool}, and switching theme is a swap of the palette reference.
+ * The ambient paints stay with each engine.
+ * <p>
+ * The minute arc and the ring come in two versions, with and without anti-aliasing, for the
+ * quality tiers that turn it off.
+ */
+class FacePalette {
+    /**
+     * Preferences holding the theme chosen in {@link ConfigActivity}.
+     */
+    static final String PREFERENCES = "face";
+    static final String KEY_THEME = "theme";
+
+    // Order of the colors in a theme array.
+    private static final int COLOR_HOURS = 0;
+    private static final int COLOR_MINUTES = 1;
+    private static final int COLOR_RING = 2;
+    private static final int COLOR_TIME = 3;
+    private static final int COLOR_DATE = 4;
+    private static final int COLOR_BACKGROUND_TINT = 5;
+    private static final int WHITE = 0xffffffff;
+
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+    private static final float STROKE_WIDTH = 6f;
+    /**
+     * Opacity of the tap feedback drawn over the pressed complication.
+     */
+    private static final int HIGHLIGHT_ALPHA = 0x60;
+
+    private final int mTheme;
+    // indexed by DrawTarget paint id, null for the paints of the engine
+    private final Paint[] mPaints = new Paint[DrawTarget.PAINT_COUNT];
+    private final Paint[] mAliasedPaints = new Paint[DrawTarget.PAINT_COUNT];
+    private final ColorFilter mBackgroundFilter;
+
+    FacePalette(Context context, int theme) {
+        Resources res = context.getResources();
+        mTheme = theme;
+        int[] colors = readColors(res, theme);
+        float minutesStrokeWidth = res.getDimension(R.dimen.minutes_stroke_width);
+        Paint hourTick = new Paint();
+        hourTick.setColor(colors[COLOR_HOURS]);
+        hourTick.setStrokeWidth(STROKE_WIDTH);
+        hourTick.setAntiAlias(true);
+        hourTick.setStrokeCap(Paint.Cap.SQUARE);
+        Paint minuteArc = new Paint();
+        minuteArc.setStyle(Paint.Style.STROKE);
+        minuteArc.setColor(colors[COLOR_MINUTES]);
+        minuteArc.setStrokeWidth(minutesStrokeWidth);
+        minuteArc.setAntiAlias(true);
+        minuteArc.setStrokeCap(Paint.Cap.ROUND);
+        Paint ring = new Paint();
+        ring.setStyle(Paint.Style.STROKE);
+        ring.setColor(colors[COLOR_RING]);
+        ring.setStrokeWidth(minutesStrokeWidth + 5);
+        ring.setAntiAlias(true);
+        ring.setStrokeCap(Paint.Cap.ROUND);
+        Paint time = new Paint();
+        time.setTypeface(NORMAL_TYPEFACE);
+        time.setAntiAlias(true);
+        time.setColor(colors[COLOR_TIME]);
+        time.setTextSize(res.getDimension(R.dimen.time_text_size));
+        time.setTextAlign(Paint.Align.CENTER);
+        Paint date = new Paint();
+        date.setTypeface(NORMAL_TYPEFACE);
+        date.setAntiAlias(true);
+        date.setColor(colors[COLOR_DATE]);
+        date.setTextSize(res.getDimension(R.dimen.date_text_size));
+        date.setTextAlign(Paint.Align.CENTER);
+        Paint highlight = new Paint();
+        highlight.setColor(ContextCompat.getColor(context, R.color.complication_highlight));
+        highlight.setAlpha(HIGHLIGHT_ALPHA);
+        highlight.setAntiAlias(true);
+        Paint seconds = new Paint();
+        seconds.setColor(colors[COLOR_TIME]);
+        seconds.setAntiAlias(true);
+        mPaints[DrawTarget.PAINT_HOUR_TICK] = hourTick;
+        mPaints[DrawTarget.PAINT_MINUTE_ARC] = minuteArc;
+        mPaints[DrawTarget.PAINT_RING] = ring;
+        mPaints[DrawTarget.PAINT_TIME] = time;
+        mPaints[DrawTarget.PAINT_DATE] = date;
+        mPaints[DrawTarget.PAINT_HIGHLIGHT] = highlight;
+        mPaints[DrawTarget.PAINT_SECONDS] = seconds;
+        System.arraycopy(mPaints, 0, mAliasedPaints, 0, mPaints.length);
+        mAliasedPaints[DrawTarget.PAINT_MINUTE_ARC] = aliased(minuteArc);
+        mAliasedPaints[DrawTarget.PAINT_RING] = aliased(ring);
+        // the vector background is drawn in greys, multiplying tints it
+        int tint = colors[COLOR_BACKGROUND_TINT];
+        mBackgroundFilter = tint == WHITE ? null
+                : new PorterDuffColorFilter(tint, PorterDuff.Mode.MULTIPLY);
+    }
+
+    private static Paint aliased(Paint paint) {
+        Paint aliased = new Paint(paint);
+        aliased.setAntiAlias(false);
+        return aliased;
+    }
+
+    private static int[] readColors(Resources res, int theme) {
+        TypedArray palettes = res.obtainTypedArray(R.array.palettes);
+        int id = palettes.getResourceId(theme, 0);
+        palettes.recycle();
+        TypedArray values = res.obtainTypedArray(id);
+        int[] colors = new int[COLOR_BACKGROUND_TINT + 1];
+        for (int i = 0; i < colors.length; ++i)
+            colors[i] = values.getColor(i, WHITE);
+        values.recycle();
+        return colors;
+    }
+
+    /**
+     * Returns the number of themes.
+     */
+    static int getThemeCount(Resources res) {
+        TypedArray palettes = res.obtainTypedArray(R.array.palettes);
+        int count = palettes.length();
+        palettes.recycle();
+        return count;
+    }
+
+    static SharedPreferences getPreferences(Context context) {
+        return context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns the theme stored in {@code preferences}, the first one if it is not valid.
+     */
+    static int getTheme(SharedPreferences preferences, Resources res) {
+        int theme = preferences.getInt(KEY_THEME, 0);
+        return theme >= 0 && theme < getThemeCount(res) ? theme : 0;
+    }
+
+    int getTheme() {
+        return mTheme;
+    }
+
+    /**
+     * Returns the paint of a {@link DrawTarget} paint id, or null if the engine owns it.
+     *
+     * @param antiAlias false for the minute arc and ring without anti-aliasing
+     */
+    Paint getPaint(int paint, boolean antiAlias) {
+        return antiAlias ? mPaints[paint] : mAliasedPaints[paint];
+    }
+
+    Paint getTimePaint() {
+        return mPaints[DrawTarget.PAINT_TIME];
+    }
+
+    Paint getDatePaint() {
+        return mPaints[DrawTarget.PAINT_DATE];
+    }
+
+    /**
+     * Returns the filter the background is drawn with, null to draw it as it is.
+     */
+    ColorFilter getBackgroundFilter() {
+        return mBackgroundFilter;
+    }
+}
@@ -0,0 +1,159 @@
+package it.gabry25.flatwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.support.wearable.complications.rendering.ComplicationDrawable;
+
+import it.gabry25.flatwatchface.core.DrawTarget;
+
+/**
+ * The platform objects behind the ids used by {@link DrawTarget}: paints, layer bitmaps,
+ * background and complication drawables. Shared by every {@link CanvasDrawTarget} of an
+ * engine, so a frame rendered on the pipeline thread reuses the same layers.
+ * <p>
+ * The paints of the interactive face come from the {@link FacePalette} of the theme, the
+ * ambient ones are set by the engine.
+ * <p>
+ * A layer can be shared with the other engines through {@link RenderResourcePool}: it is
+ * then only read, and replaced by a bitmap of this engine before it is drawn into again.
+ * Glyph atlases always come from the pool.
+ */
+class FaceResources {
+    private final Paint[] mPaints = new Paint[DrawTarget.PAINT_COUNT];
+    private FacePalette mPalette;
+    private boolean mAntiAlias = true;
+    private final Bitmap[] mLayers = new Bitmap[DrawTarget.LAYER_COUNT];
+    private final boolean[] mSharedLayers = new boolean[DrawTarget.LAYER_COUNT];
+    private final GlyphAtlas[] mGlyphAtlases = new GlyphAtlas[DrawTarget.PAINT_COUNT];
+    private final Drawable mBackground;
+    private final ComplicationDrawable[] mComplications;
+    private int mWidth;
+    private int mHeight;
+
+    FaceResources(Drawable background, ComplicationDrawable[] complications) {
+        mBackground = background;
+        mComplications = complications;
+    }
+
+    /**
+     * Sets a paint the palette does not have.
+     */
+    void setPaint(int paint, Paint value) {
+        mPaints[paint] = value;
+    }
+
+    /**
+     * Switches to the paints of {@code palette}, and tints the background like it.
+     */
+    void setPalette(FacePalette palette) {
+        mPalette = palette;
+        mBackground.setColorFilter(palette.getBackgroundFilter());
+    }
+
+    FacePalette getPalette() {
+        return mPalette;
+    }
+
+    /**
+     * Sets whether the minute arc and the ring are anti-aliased.
+     */
+    void setAntiAlias(boolean antiAlias) {
+        mAntiAlias = antiAlias;
+    }
+
+    Paint getPaint(int paint) {
+        Paint themed = mPalette.getPaint(paint, mAntiAlias);
+        return themed != null ? themed : mPaints[paint];
+    }
+
+    /**
+     * Sets the atlas texts of {@code paint} are drawn from when possible, null for none.
+     */
+    void setGlyphAtlas(int paint, GlyphAtlas atlas) {
+        mGlyphAtlases[paint] = atlas;
+    }
+
+    GlyphAtlas getGlyphAtlas(int paint) {
+        return mGlyphAtlases[paint];
+    }
+
+    Drawable getBackground() {
+        return mBackground;
+    }
+
+    ComplicationDrawable getComplication(int slot) {
+        return mComplications[slot];
+    }
+
+    /**
+     * Sets the surface size. Layers of another size are dropped and allocated again when
+     * they are first drawn.
+     */
+    void setSize(int width, int height) {
+        if (width == mWidth && height == mHeight)
+            return;
+        mWidth = width;
+        mHeight = height;
+        mBackground.setBounds(0, 0, width, height);
+        release();
+    }
+
+    Bitmap getLayer(int layer) {
+        if (mLayers[layer] == null)
+            mLayers[layer] = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        return mLayers[layer];
+    }
+
+    /**
+     * Returns a layer to draw into: a shared layer is replaced by a bitmap of its own first.
+     */
+    Bitmap getWritableLayer(int layer) {
+        if (mSharedLayers[layer])
+            drop(layer);
+        return getLayer(layer);
+    }
+
+    /**
+     * Replaces a layer with {@code bitmap}, which must have the surface size.
+     */
+    void setLayer(int layer, Bitmap bitmap) {
+        drop(layer);
+        mLayers[layer] = bitmap;
+    }
+
+    /**
+     * Replaces a layer with a shared {@code bitmap}, possibly the layer itself, which is
+     * from now on only read.
+     */
+    void setSharedLayer(int layer, Bitmap bitmap) {
+        if (mLayers[layer] != bitmap)
+            drop(layer);
+        mLayers[layer] = bitmap;
+        mSharedLayers[layer] = true;
+    }
+
+    /**
+     * Returns the bytes of the layers of this engine alone.
+     */
+    long getPrivateByteCount() {
+        long bytes = 0;
+        for (int i = 0; i < mLayers.length; ++i) {
+            if (mLayers[i] != null && !mSharedLayers[i])
+                bytes += mLayers[i].getAllocationByteCount();
+        }
+        return bytes;
+    }
+
+    private void drop(int layer) {
+        if (mLayers[layer] != null && !mSharedLayers[layer])
+            mLayers[layer].recycle();
+        mLayers[layer] = null;
+        mSharedLayers[layer] = false;
+    }
+
+    void release() {
+        for (int i = 0; i < mLayers.length; ++i)
+            drop(i);
+    }
+}
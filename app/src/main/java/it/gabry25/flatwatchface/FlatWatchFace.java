@@ -3,48 +3,68 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
+import android.content.SharedPreferences;
 import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.RectF;
-import android.graphics.Typeface;
 import android.graphics.drawable.VectorDrawable;
+import android.os.BatteryManager;
 import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Message;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.os.Trace;
 import android.support.v4.content.ContextCompat;
 import android.support.wearable.complications.ComplicationData;
 import android.support.wearable.complications.rendering.ComplicationDrawable;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
+import android.view.Choreographer;
 import android.view.SurfaceHolder;
+
+import it.gabry25.flatwatchface.core.DrawTarget;
+import it.gabry25.flatwatchface.core.FaceLayout;
+import it.gabry25.flatwatchface.core.FaceRenderer;
+import it.gabry25.flatwatchface.core.FrameComposer;
+import it.gabry25.flatwatchface.core.QualityGovernor;
+import it.gabry25.flatwatchface.core.SecondsIndicator;
+import it.gabry25.flatwatchface.core.SlotSpec;
+import it.gabry25.flatwatchface.core.TimeTextCache;
+import it.gabry25.flatwatchface.core.ZoneClock;
+
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
 import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 /**
  * Digital and analog watch face with date and complications. On devices
  * with low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
  */
 public class FlatWatchFace extends CanvasWatchFaceService {
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+    private static final String DATE_PATTERN = "EE, dd MMM";
+
     /**
-     * Update rate in milliseconds for interactive mode. Defaults to one second
-     * because the watch face needs to update seconds in interactive mode.
+     * The complication slots, up to {@link FaceLayout#MAX_SLOTS}; the id of a slot is its
+     * index. Slots can also sit inside the minute ring, e.g. {@code SlotSpec.ring(3, 1 / 6f)}.
      */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
-
-    private static final int LEFT_COMPLICATION_ID = 0;
-    private static final int CENTER_COMPLICATION_ID = 1;
-    private static final int RIGHT_COMPLICATION_ID = 2;
-    private static final int[] COMPLICATION_IDS = {LEFT_COMPLICATION_ID,
-            CENTER_COMPLICATION_ID,RIGHT_COMPLICATION_ID};
+    private static final SlotSpec[] COMPLICATION_SLOTS = SlotSpec.faceSlots();
+    private static final int[] COMPLICATION_IDS = new int[COMPLICATION_SLOTS.length];
+    static {
+        for (int i = 0; i < COMPLICATION_IDS.length; ++i)
+            COMPLICATION_IDS[i] = i;
+    }
 
     private static final int[] COMPLICATION_SUPPORTED_TYPES = {
             ComplicationData.TYPE_RANGED_VALUE,
@@ -53,34 +73,58 @@ public class FlatWatchFace extends CanvasWatchFaceService {
             ComplicationData.TYPE_SMALL_IMAGE
     };
 
-    public static int getLeftComplicationId() {
-        return LEFT_COMPLICATION_ID;
-    }
-
-    public static int getCenterComplicationId() {
-        return CENTER_COMPLICATION_ID;
-    }
-
-    public static int getRightComplicationId() {
-        return RIGHT_COMPLICATION_ID;
-    }
-
     public static int[] getComplicationIds() {
         return COMPLICATION_IDS;
     }
 
+    /**
+     * Returns a layout of the complication slots, to be sized with
+     * {@link FaceLayout#layout(int, int)}.
+     *
+     * @param centerYOffset offset of the center slot, in pixels
+     */
+    static FaceLayout createLayout(float ringOffset, int centerYOffset) {
+        return new FaceLayout(ringOffset, centerYOffset, COMPLICATION_SLOTS);
+    }
+
     public static int[] getComplicationSupportedTypes(){
         return COMPLICATION_SUPPORTED_TYPES;
     }
 
     /**
-     * Handler message id for updating the time periodically in interactive mode.
+     * Handler message id for the minute aligned wakeups of {@link TickScheduler}.
      */
     private static final int MSG_UPDATE_TIME = 0;
+    /**
+     * Handler message id for pre-rendering the next minute's frame, see {@link FramePipeline}.
+     */
+    private static final int MSG_PRERENDER = 1;
+    /**
+     * Handler message id for applying complication updates held back by
+     * {@link ComplicationFilter}.
+     */
+    private static final int MSG_COMPLICATION_DUE = 2;
+    /**
+     * Live engines, for {@link #dump(FileDescriptor, PrintWriter, String[])}. Main thread only.
+     */
+    private final List<Engine> mEngines = new ArrayList<>();
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
+    /**
+     * Prints the frame metrics of every engine, see
+     * {@code adb shell dumpsys activity service it.gabry25.flatwatchface/.FlatWatchFace}.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        IconCache.getInstance(this).dump(writer);
+        RenderResourcePool.dumpInstance(writer);
+        writer.println("FlatWatchFace engines: " + mEngines.size());
+        for (Engine engine : mEngines)
+            engine.dump(writer);
+    }
     private static class EngineHandler extends Handler {
         private final WeakReference<FlatWatchFace.Engine> mWeakReference;
         private EngineHandler(FlatWatchFace.Engine reference) {
@@ -94,45 +138,179 @@ public class FlatWatchFace extends CanvasWatchFaceService {
                     case MSG_UPDATE_TIME:
                         engine.handleUpdateTimeMessage();
                         break;
+                    case MSG_PRERENDER:
+                        engine.handlePrerenderMessage();
+                        break;
+                    case MSG_COMPLICATION_DUE:
+                        engine.handleComplicationDueMessage();
+                        break;
                 }
             }
         }
     }
-    private class Engine extends CanvasWatchFaceService.Engine {
+    private class Engine extends CanvasWatchFaceService.Engine
+            implements FrameScheduler.Callback, TickScheduler.Callback, FramePipeline.Renderer,
+            ComplicationImages.Callback, FrameSnapshot.Source {
         private final Handler mUpdateTimeHandler = new EngineHandler(this);
+        private final TickScheduler mTickScheduler =
+                new TickScheduler(mUpdateTimeHandler, MSG_UPDATE_TIME, this);
+        private FrameScheduler mFrameScheduler;
+        private final FrameMetrics mMetrics = new FrameMetrics(COMPLICATION_IDS.length);
+        private boolean mTraceEnabled;
+        /**
+         * Whether the time is drawn from a {@link GlyphAtlas}, see {@code R.bool.glyph_atlas}.
+         */
+        private boolean mGlyphAtlasEnabled;
+        /**
+         * Lowers the quality when frames get slow or the battery runs low, null unless
+         * {@code R.bool.adaptive_quality}.
+         */
+        private QualityGovernor mQualityGovernor;
+        /**
+         * Elapsed realtime of {@link #onCreate}, -1 once the first frame is drawn.
+         */
+        private long mCreateNs = -1;
+        private StaticLayerCache mStaticLayerCache;
+        /**
+         * Static layer of the last run, read from disk before the first surface was known,
+         * and the tier and theme it was read for.
+         */
+        private Bitmap mRestoredStaticLayer;
+        private int mRestoredTier;
+        private int mRestoredTheme;
+        private boolean mStaticLayerRestored;
+        /**
+         * Whether the static layer of the current surface and tier is on disk.
+         */
+        private boolean mStaticLayerSaved;
+        /**
+         * The dot going round the ring in interactive mode, null unless
+         * {@code R.bool.seconds_mode}.
+         */
+        private SecondsIndicator mSeconds;
+        private boolean mSecondsRunning;
+        private boolean mSecondsPartialRedraw;
+        /**
+         * Whether the next onDraw is for a move of the seconds dot.
+         */
+        private boolean mSecondsFramePending;
+        private final Rect mSecondsDirty = new Rect();
+        /**
+         * Time in the zones of {@code R.array.home_time_zones}, null if there are none.
+         */
+        private ZoneClock mZoneClock;
+        private float mZoneLineHeight;
+        private final Choreographer.FrameCallback mSecondsCallback =
+                new Choreographer.FrameCallback() {
+                    @Override
+                    public void doFrame(long frameTimeNanos) {
+                        handleSecondsFrame();
+                    }
+                };
+        private boolean mRegisteredBatteryReceiver;
+        private int mBatteryLevel = 100;
+        private boolean mCharging;
+        private final BroadcastReceiver mBatteryReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                    int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+                    mBatteryLevel = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, scale) * 100
+                            / scale;
+                    mCharging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+                }
+                boolean powerSave = getSystemService(PowerManager.class).isPowerSaveMode();
+                if (mQualityGovernor.onBatteryChanged(mBatteryLevel, mCharging, powerSave))
+                    applyQualityTier();
+            }
+        };
+        /**
+         * Pre-renders the next minute's frame, null unless {@code R.bool.pipelined_rendering}.
+         */
+        private FramePipeline mFramePipeline;
+        private long mPrerenderLeadMs;
+        /**
+         * Guards the render state (paints, layers, bounds, complication drawables) shared with
+         * the {@link #mFramePipeline} thread.
+         */
+        private final Object mRenderLock = new Object();
         private Calendar mCalendar;
+        private Calendar mPrerenderCalendar;
         private final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
+                // Time zone, locale or 12/24h changes all need new text.
                 mCalendar.setTimeZone(TimeZone.getDefault());
-                invalidate();
+                if (!Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction()))
+                    mTickScheduler.onClockChanged();
+                if (mZoneClock != null) {
+                    // the time zone data may have been updated with the zone
+                    mZoneClock.reset();
+                    mComposer.invalidateZoneLines();
+                }
+                updateTextFormats();
+                // The prepared frame shows the text of the old zone.
+                if (mFramePipeline != null)
+                    mFramePipeline.clear();
+                mFrameScheduler.request(FrameScheduler.REASON_TIME_ZONE);
             }
         };
-        private static final float STROKE_WIDTH = 6f;
 
-        private float mDigitalTimeSize;
-        private float mDigitalDateSize;
-        private float mMinutesStrokeWidth;
         private boolean mRegisteredTimeZoneReceiver = false;
         private float mDateYOffset;
         private float mTimeYOffset;
         private int mCenterYOffset;
-        private Paint mHandHourPaint;
-        private Paint mMinuteHandPaint;
-        private Paint mCirclePaint;
         private VectorDrawable mBackgroundImage;
-        private Paint mDatePaint;
-        private Paint mTimePaint;
+        /**
+         * Paints of the current theme, shared with the other engines and switched as a whole,
+         * see {@link #applyPalette}.
+         */
+        private FacePalette mPalette;
+        private SharedPreferences mPreferences;
+        /**
+         * Theme last read from the preferences; palettes prepared for older ones are dropped.
+         */
+        private int mRequestedTheme;
+        private final SharedPreferences.OnSharedPreferenceChangeListener mThemeListener =
+                new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences preferences,
+                                                          String key) {
+                        if (FacePalette.KEY_THEME.equals(key))
+                            onThemeChanged();
+                    }
+                };
+        private Paint mAmbientTimePaint;
+        private Paint mAmbientDatePaint;
+        private int mAmbientPrimaryColor;
+        private int mAmbientSecondaryColor;
         private float mMinuteCircleOffset;
         private int mWidth;
         private int mHeight;
-        private float mCenterX;
-        private float mCenterY;
-        RectF innerCircle;
-        private DateFormat mDateFormat;
+        private FaceLayout mLayout;
+        /**
+         * Draws the face; the static and ambient layers it keeps are bitmaps of
+         * {@link #mResources}, rendered again only when they change.
+         */
+        private FaceRenderer mRenderer;
+        private FrameComposer<Bitmap> mComposer;
+        private FaceResources mResources;
+        /**
+         * Assets shared with the other engines of the process.
+         */
+        private RenderResourcePool mPool;
+        private CanvasDrawTarget mDrawTarget;
+        private CanvasDrawTarget mPipelineTarget;
+        // Created on first use, for the glyph atlases.
         private DateFormat mTimeFormat;
+        private Locale mFormatLocale;
+        private String mTimePattern;
+        private final ExecutorService mBackgroundExecutor = Executors.newSingleThreadExecutor();
+        private final TimeTextCache mTextCache = new TimeTextCache(mBackgroundExecutor);
         private ComplicationDrawable[] mComplicationDrawables;
         private ComplicationData[] mComplicationDatas;
+        private ComplicationFilter mComplicationFilter;
+        private ComplicationImages mComplicationImages;
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
          * disable anti-aliasing in ambient mode.
@@ -140,91 +318,183 @@ public class FlatWatchFace extends CanvasWatchFaceService {
         private boolean mLowBitAmbient;
         private boolean mBurnInProtection;
         private boolean mAmbient;
+        /**
+         * Slot under the finger while a tap is in progress, -1 otherwise.
+         */
+        private int mPressedSlot = -1;
+        /**
+         * Uptime of the touch whose feedback has not been drawn yet, -1 if none.
+         */
+        private long mPressEventTime = -1;
 
         private void initVariables(Resources res){
-            mMinutesStrokeWidth = res.getDimension(R.dimen.minutes_stroke_width);
             mMinuteCircleOffset = res.getDimension(R.dimen.minute_circle_offset);
             mTimeYOffset = res.getDimension(R.dimen.time_vertical_offset);
             mDateYOffset = res.getDimension(R.dimen.date_vertical_offset);
             mCenterYOffset = (int)res.getDimension(R.dimen.center_vertical_offset);
-            mDigitalTimeSize = res.getDimension(R.dimen.time_text_size);
-            mDigitalDateSize = res.getDimension(R.dimen.date_text_size);
         }
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
+            mCreateNs = SystemClock.elapsedRealtimeNanos();
             setWatchFaceStyle(new WatchFaceStyle.Builder(FlatWatchFace.this)
                     .setAcceptsTapEvents(true)
                     .build());
             Resources res = getResources();
+            mPool = RenderResourcePool.acquire(FlatWatchFace.this);
             initVariables(res);
+            mLayout = createLayout(mMinuteCircleOffset, mCenterYOffset);
+            mFrameScheduler = new FrameScheduler(mUpdateTimeHandler, this,
+                    res.getInteger(R.integer.frame_coalesce_window_ms));
+            mTraceEnabled = res.getBoolean(R.bool.trace_frames);
+            mGlyphAtlasEnabled = res.getBoolean(R.bool.glyph_atlas);
+            if (res.getBoolean(R.bool.adaptive_quality)) {
+                mQualityGovernor = new QualityGovernor(
+                        TimeUnit.MICROSECONDS.toNanos(
+                                res.getInteger(R.integer.quality_frame_budget_us)),
+                        res.getInteger(R.integer.quality_low_battery),
+                        res.getInteger(R.integer.quality_critical_battery));
+            }
+            if (res.getBoolean(R.bool.seconds_mode)) {
+                mSeconds = new SecondsIndicator(res.getInteger(R.integer.seconds_rate_hz),
+                        TimeUnit.MICROSECONDS.toNanos(
+                                res.getInteger(R.integer.seconds_frame_budget_us)),
+                        res.getDimension(R.dimen.seconds_dot_radius));
+                mSecondsPartialRedraw = res.getBoolean(R.bool.seconds_partial_redraw);
+            }
+            String[] zones = res.getStringArray(R.array.home_time_zones);
+            if (zones.length > 0) {
+                mZoneClock = new ZoneClock(zones,
+                        res.getStringArray(R.array.home_time_zone_labels));
+                mZoneLineHeight = res.getDimension(R.dimen.zone_line_height);
+            }
             mCalendar = Calendar.getInstance();
+            mEngines.add(this);
+            // The preferences are only written by ConfigActivity, in this process.
+            mPreferences = FacePalette.getPreferences(FlatWatchFace.this);
+            mPalette = mPool.getPalette(FacePalette.getTheme(mPreferences, res));
+            mRequestedTheme = mPalette.getTheme();
+            mPreferences.registerOnSharedPreferenceChangeListener(mThemeListener);
+            restoreStaticLayerAsync(res);
+            if (res.getBoolean(R.bool.pipelined_rendering)) {
+                mFramePipeline = new FramePipeline(mBackgroundExecutor, this);
+                mPrerenderLeadMs = res.getInteger(R.integer.prerender_lead_ms);
+                mPrerenderCalendar = Calendar.getInstance();
+            }
             // Initializes background.
             mBackgroundImage = (VectorDrawable) getDrawable(R.drawable.background);
-            // Initializes Analog Watch Face.
-            mMinuteHandPaint = new Paint();
-            mMinuteHandPaint.setStyle(Paint.Style.STROKE);
-            mMinuteHandPaint.setColor(ContextCompat.getColor(getApplicationContext(),
-                    R.color.analog_minutes));
-            mMinuteHandPaint.setStrokeWidth(mMinutesStrokeWidth);
-            mMinuteHandPaint.setAntiAlias(true);
-            mMinuteHandPaint.setStrokeCap(Paint.Cap.ROUND);
-            mCirclePaint = new Paint();
-            mCirclePaint.setStyle(Paint.Style.STROKE);
-            mCirclePaint.setColor(ContextCompat.getColor(getApplicationContext(),
-                    R.color.default_dark));
-            mCirclePaint.setStrokeWidth(mMinutesStrokeWidth +5);
-            mCirclePaint.setAntiAlias(true);
-            mCirclePaint.setStrokeCap(Paint.Cap.ROUND);
-            mHandHourPaint = new Paint();
-            mHandHourPaint.setColor(ContextCompat.getColor(getApplicationContext(),
-                    R.color.analog_hours));
-            mHandHourPaint.setStrokeWidth(STROKE_WIDTH);
-            mHandHourPaint.setAntiAlias(true);
-            mHandHourPaint.setStrokeCap(Paint.Cap.SQUARE);
             //Initializes the format
-            //mDateFormat = SimpleDateFormat.getDateInstance(DateFormat.FULL);
-            mDateFormat = new SimpleDateFormat("EE, dd MMM",Locale.getDefault());
-            mTimeFormat = SimpleDateFormat.getTimeInstance(DateFormat.SHORT,Locale.getDefault());
-            // Initializes Digital Watch Face.
-            mTimePaint = new Paint();
-            mTimePaint.setTypeface(NORMAL_TYPEFACE);
-            mTimePaint.setAntiAlias(true);
-            mTimePaint.setColor(ContextCompat.getColor(getApplicationContext(),
-                    R.color.default_bright));
-            mTimePaint.setTextSize(mDigitalTimeSize);
-            mTimePaint.setTextAlign(Paint.Align.CENTER);
-            mDatePaint = new Paint();
-            mDatePaint.setTypeface(NORMAL_TYPEFACE);
-            mDatePaint.setAntiAlias(true);
-            mDatePaint.setColor(ContextCompat.getColor(getApplicationContext(),
-                    R.color.default_middle));
-            mDatePaint.setTextSize(mDigitalDateSize);
-            mDatePaint.setTextAlign(Paint.Align.CENTER);
+            updateTextFormats();
+            // Starts building today's text while the rest is set up.
+            mTextCache.getTime(mCalendar);
+            // Initializes the ambient face, with a minimal palette.
+            mAmbientPrimaryColor = ContextCompat.getColor(getApplicationContext(),
+                    R.color.default_bright);
+            mAmbientSecondaryColor = ContextCompat.getColor(getApplicationContext(),
+                    R.color.default_bright_ambient);
+            mAmbientTimePaint = new Paint(mPalette.getTimePaint());
+            mAmbientDatePaint = new Paint(mPalette.getDatePaint());
+            applyAmbientPalette();
 
-            // Initializes Complications
+            // Initializes Complications. Inflated here rather than in the background: the
+            // surface and the complication data come right after onCreate and both need them.
             mComplicationDrawables = new ComplicationDrawable[COMPLICATION_IDS.length];
             mComplicationDatas = new ComplicationData[COMPLICATION_IDS.length];
             for(int i=0;i<COMPLICATION_IDS.length;++i) {
                 mComplicationDrawables[i] = (ComplicationDrawable) getDrawable(R.drawable.complication_styles);
                 mComplicationDrawables[i].setContext(getApplicationContext());
+                // The tap feedback is drawn by the renderer, over the cached frame.
+                mComplicationDrawables[i].setHighlightDuration(0);
             }
+            mComplicationFilter = new ComplicationFilter(getApplicationContext(),
+                    COMPLICATION_IDS.length, res.getIntArray(R.array.complication_min_interval_ms),
+                    res.getIntArray(R.array.complication_ambient_min_interval_ms));
+            mComplicationImages = new ComplicationImages(
+                    IconCache.getInstance(FlatWatchFace.this), mUpdateTimeHandler,
+                    COMPLICATION_IDS.length, this);
             setActiveComplications(COMPLICATION_IDS);
+
+            // Initializes the renderer.
+            mResources = new FaceResources(mBackgroundImage, mComplicationDrawables);
+            mResources.setPalette(mPalette);
+            mResources.setPaint(DrawTarget.PAINT_AMBIENT_TIME, mAmbientTimePaint);
+            mResources.setPaint(DrawTarget.PAINT_AMBIENT_DATE, mAmbientDatePaint);
+            updateGlyphAtlases();
+            mDrawTarget = new CanvasDrawTarget(mResources);
+            mPipelineTarget = new CanvasDrawTarget(mResources);
+            mRenderer = new FaceRenderer(mLayout, mTimeYOffset, mDateYOffset,
+                    (int) res.getDimension(R.dimen.burn_in_shift));
+            mComposer = new FrameComposer<>(mRenderer, mTextCache, mCalendar,
+                    new FrameComposer.Host<Bitmap>() {
+                        @Override
+                        public Bitmap takePreparedFrame(long timeMs, int contentVersion) {
+                            return mFramePipeline != null
+                                    ? mFramePipeline.take(timeMs, contentVersion) : null;
+                        }
+
+                        @Override
+                        public void drawPreparedFrame(Bitmap frame) {
+                            mDrawTarget.drawBitmap(frame);
+                        }
+
+                        @Override
+                        public Bitmap getFrameLayer() {
+                            return mResources.getLayer(DrawTarget.LAYER_FRAME);
+                        }
+
+                        @Override
+                        public void publishFrame(Bitmap frame) {
+                            FrameSnapshot.publish(frame);
+                        }
+                    });
+            mComposer.setZoneClock(mZoneClock, mZoneLineHeight);
+        }
+        /**
+         * Sets up the ambient paints: on low-bit displays every text uses the primary color
+         * and no anti-aliasing.
+         */
+        private void applyAmbientPalette() {
+            mAmbientTimePaint.setColor(mAmbientPrimaryColor);
+            mAmbientDatePaint.setColor(mLowBitAmbient
+                    ? mAmbientPrimaryColor : mAmbientSecondaryColor);
+            mAmbientTimePaint.setAntiAlias(!mLowBitAmbient);
+            mAmbientDatePaint.setAntiAlias(!mLowBitAmbient);
         }
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mEngines.remove(this);
+            FrameSnapshot.clearSource(this);
+            mPreferences.unregisterOnSharedPreferenceChangeListener(mThemeListener);
+            mTickScheduler.setRunning(false);
+            if (mSecondsRunning)
+                Choreographer.getInstance().removeFrameCallback(mSecondsCallback);
+            mUpdateTimeHandler.removeMessages(MSG_PRERENDER);
+            mUpdateTimeHandler.removeMessages(MSG_COMPLICATION_DUE);
+            mFrameScheduler.cancel();
+            if (mFramePipeline != null)
+                mFramePipeline.release();
+            mBackgroundExecutor.shutdownNow();
+            if (mRestoredStaticLayer != null) {
+                mRestoredStaticLayer.recycle();
+                mRestoredStaticLayer = null;
+            }
+            synchronized (mRenderLock) {
+                mResources.release();
+                mPool.release();
+            }
             super.onDestroy();
         }
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
             if (visible) {
+                FrameSnapshot.setSource(this);
                 registerReceiver();
-                // Update time zone in case it changed while we weren't visible.
+                // Update time zone and formats in case they changed while we weren't visible.
                 mCalendar.setTimeZone(TimeZone.getDefault());
-                invalidate();
+                updateTextFormats();
+                mFrameScheduler.request(FrameScheduler.REASON_VISIBILITY);
             } else {
                 unregisterReceiver();
             }
@@ -238,7 +508,17 @@ public class FlatWatchFace extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+            filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            // Also sent when the user switches between 12h and 24h.
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             FlatWatchFace.this.registerReceiver(mTimeZoneReceiver, filter);
+            if (mQualityGovernor != null) {
+                // The battery state is sticky: the receiver gets the current one right away.
+                mRegisteredBatteryReceiver = true;
+                IntentFilter batteryFilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+                batteryFilter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+                FlatWatchFace.this.registerReceiver(mBatteryReceiver, batteryFilter);
+            }
         }
         private void unregisterReceiver() {
             if (!mRegisteredTimeZoneReceiver) {
@@ -246,31 +526,127 @@ public class FlatWatchFace extends CanvasWatchFaceService {
             }
             mRegisteredTimeZoneReceiver = false;
             FlatWatchFace.this.unregisterReceiver(mTimeZoneReceiver);
+            if (mRegisteredBatteryReceiver) {
+                mRegisteredBatteryReceiver = false;
+                FlatWatchFace.this.unregisterReceiver(mBatteryReceiver);
+            }
+        }
+        /**
+         * Applies the tier of {@link #mQualityGovernor} to the paints and the renderer.
+         */
+        private void applyQualityTier() {
+            int tier = mQualityGovernor.getTier();
+            synchronized (mRenderLock) {
+                mResources.setAntiAlias(tier < QualityGovernor.TIER_NO_ANTIALIAS);
+                mRenderer.setQualityTier(tier);
+                mStaticLayerSaved = false;
+                useSharedStaticLayer();
+            }
+            // The prepared frame was drawn at the previous tier.
+            if (mFramePipeline != null)
+                mFramePipeline.clear();
+            mFrameScheduler.request(FrameScheduler.REASON_QUALITY);
+        }
+        /**
+         * Returns the current {@link QualityGovernor} tier, {@code TIER_FULL} if adaptive
+         * quality is off.
+         */
+        int getQualityTier() {
+            return mQualityGovernor != null
+                    ? mQualityGovernor.getTier() : QualityGovernor.TIER_FULL;
+        }
+        /**
+         * Reads the current locale and 12/24h setting and rebuilds the text cache if they
+         * changed.
+         */
+        private void updateTextFormats() {
+            Locale locale = Locale.getDefault();
+            String timePattern = android.text.format.DateFormat.getBestDateTimePattern(locale,
+                    android.text.format.DateFormat.is24HourFormat(FlatWatchFace.this)
+                            ? "Hm" : "hm");
+            if (mTextCache.setFormat(locale, timePattern, DATE_PATTERN)) {
+                mFormatLocale = locale;
+                mTimePattern = timePattern;
+                mTimeFormat = null;
+                if (mComposer != null)
+                    mComposer.invalidateZoneLines();
+                updateGlyphAtlases();
+            }
+        }
+        private DateFormat getTimeFormat() {
+            if (mTimeFormat == null)
+                mTimeFormat = mPool.getDateFormat(mTimePattern, mFormatLocale);
+            // shared with the other engines, so the zone is set on every use
+            mTimeFormat.setTimeZone(mCalendar.getTimeZone());
+            return mTimeFormat;
+        }
+        /**
+         * Gives the time paints an atlas of the characters of the current time format.
+         */
+        private void updateGlyphAtlases() {
+            if (!mGlyphAtlasEnabled || mResources == null)
+                return;
+            String glyphs = timeGlyphs(getTimeFormat());
+            int theme = mPalette.getTheme();
+            synchronized (mRenderLock) {
+                mResources.setGlyphAtlas(DrawTarget.PAINT_TIME,
+                        mPool.getGlyphAtlas(DrawTarget.PAINT_TIME, theme, glyphs));
+                mResources.setGlyphAtlas(DrawTarget.PAINT_AMBIENT_TIME,
+                        mPool.getGlyphAtlas(DrawTarget.PAINT_AMBIENT_TIME, theme, glyphs));
+            }
+        }
+        /**
+         * Returns the characters the time can be made of in {@code format}: formatting every
+         * hour gives all the digits, the separators and the AM/PM markers.
+         */
+        private String timeGlyphs(DateFormat format) {
+            StringBuilder glyphs = new StringBuilder();
+            Calendar calendar = Calendar.getInstance(format.getTimeZone());
+            for (int hour = 0; hour < 24; ++hour) {
+                calendar.set(Calendar.HOUR_OF_DAY, hour);
+                String time = format.format(calendar.getTime());
+                for (int i = 0; i < time.length(); ++i) {
+                    if (glyphs.indexOf(time.substring(i, i + 1)) < 0)
+                        glyphs.append(time.charAt(i));
+                }
+            }
+            return glyphs.toString();
         }
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
             mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
-            for(ComplicationDrawable cd : mComplicationDrawables){
-                cd.setLowBitAmbient(mLowBitAmbient);
-                cd.setBurnInProtection(mBurnInProtection);
+            synchronized (mRenderLock) {
+                for (ComplicationDrawable cd : mComplicationDrawables) {
+                    cd.setLowBitAmbient(mLowBitAmbient);
+                    cd.setBurnInProtection(mBurnInProtection);
+                }
+                applyAmbientPalette();
+                mRenderer.setBurnInProtection(mBurnInProtection);
+                mRenderer.invalidateContentLayers();
             }
         }
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            invalidate();
+            mTickScheduler.onSystemTick();
         }
         @Override
         public void onAmbientModeChanged(boolean inAmbientMode) {
             super.onAmbientModeChanged(inAmbientMode);
             mAmbient = inAmbientMode;
-            if (mLowBitAmbient) {
-                mTimePaint.setAntiAlias(!inAmbientMode);
+            mMetrics.onAmbientModeChanged(inAmbientMode);
+            if (mFramePipeline != null)
+                mFramePipeline.clear();
+            synchronized (mRenderLock) {
+                for (ComplicationDrawable cd : mComplicationDrawables)
+                    cd.setInAmbientMode(inAmbientMode);
+                mRenderer.invalidateContentLayers();
             }
-            for(ComplicationDrawable cd : mComplicationDrawables)
-                cd.setInAmbientMode(inAmbientMode);
+            mPressedSlot = -1;
+            // The minimum interval of the complications depends on the mode.
+            scheduleComplicationDue();
             // Whether the timer should be running depends on whether we're visible (as well as
             // whether we're in ambient mode), so we may need to start or stop the timer.
             updateTimer();
@@ -282,120 +658,543 @@ public class FlatWatchFace extends CanvasWatchFaceService {
         @Override
         public void onComplicationDataUpdate(int complicationId,
                                              ComplicationData complicationData) {
+            mMetrics.onComplicationUpdate(complicationId);
+            if (mComplicationFilter.offer(complicationId, complicationData, mAmbient,
+                    SystemClock.elapsedRealtime()))
+                mComplicationImages.update(complicationId, complicationData);
+            else
+                scheduleComplicationDue();
+        }
+        /**
+         * Applies an update accepted by {@link #mComplicationFilter}, once its images are
+         * ready.
+         */
+        @Override
+        public void onImagesReady(int complicationId, ComplicationData complicationData) {
             // Adds/updates active complication data in the array.
             mComplicationDatas[complicationId] = complicationData;
             // Updates correct ComplicationDrawable with updated data.
-            mComplicationDrawables[complicationId].setComplicationData(complicationData);
-            invalidate();
+            synchronized (mRenderLock) {
+                mComplicationDrawables[complicationId].setComplicationData(complicationData);
+            }
+            mFrameScheduler.contentChanged(FrameScheduler.REASON_COMPLICATION);
+        }
+        /**
+         * Applies the held back complication updates whose interval expired.
+         */
+        private void handleComplicationDueMessage() {
+            long now = SystemClock.elapsedRealtime();
+            for (int i = 0; i < COMPLICATION_IDS.length; ++i) {
+                ComplicationData data = mComplicationFilter.takeDue(i, mAmbient, now);
+                if (data != null)
+                    mComplicationImages.update(i, data);
+            }
+            scheduleComplicationDue();
+        }
+        private void scheduleComplicationDue() {
+            mUpdateTimeHandler.removeMessages(MSG_COMPLICATION_DUE);
+            long delayMs = mComplicationFilter.getNextDueDelay(mAmbient,
+                    SystemClock.elapsedRealtime());
+            if (delayMs >= 0)
+                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_COMPLICATION_DUE, delayMs);
         }
         /**
-         * Captures tap event (and tap type) and toggles the background color if the
-         * user finishes a tap.
+         * Captures tap event (and tap type) and forwards completed taps to the complications.
+         * A touch on a complication highlights it until the tap ends; touches elsewhere change
+         * nothing on screen, so they do not redraw.
          */
         @Override
         public void onTapCommand(int tapType, int x, int y, long eventTime) {
+            int slot;
+            synchronized (mRenderLock) {
+                slot = mLayout.findSlot(x, y);
+            }
             switch (tapType) {
                 case TAP_TYPE_TOUCH:
                     // The user has started touching the screen.
+                    if (slot >= 0 && !mAmbient) {
+                        mPressedSlot = slot;
+                        mPressEventTime = eventTime;
+                        drawTapFeedback();
+                    }
                     break;
                 case TAP_TYPE_TOUCH_CANCEL:
                     // The user has started a different gesture or otherwise cancelled the tap.
+                    releasePressedSlot();
                     break;
                 case TAP_TYPE_TAP:
                     // The user has completed the tap gesture.
-                    for(ComplicationDrawable cd : mComplicationDrawables)
-                        if(cd.onTap(x, y))
-                            return;
+                    releasePressedSlot();
+                    if (slot >= 0)
+                        mComplicationDrawables[slot].onTap(x, y);
                     break;
             }
+        }
+        private void releasePressedSlot() {
+            if (mPressedSlot < 0)
+                return;
+            mPressedSlot = -1;
+            mPressEventTime = -1;
+            drawTapFeedback();
+        }
+        /**
+         * Redraws right away, without waiting for the coalescing window of
+         * {@link #mFrameScheduler}: the frame is the cached face plus the highlight.
+         */
+        private void drawTapFeedback() {
+            mMetrics.onFrameRequested(FrameScheduler.REASON_TAP);
             invalidate();
         }
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             super.onSurfaceChanged(holder, format, width, height);
+            if (mFramePipeline != null)
+                mFramePipeline.setSize(width, height);
+            synchronized (mRenderLock) {
+                layout(width, height);
+            }
+        }
+
+        private void layout(int width, int height) {
+            mLayout.layout(width, height);
             mWidth = width;
             mHeight = height;
-            innerCircle = new RectF(mMinuteCircleOffset,mMinuteCircleOffset,
-                    mWidth-mMinuteCircleOffset,mHeight-mMinuteCircleOffset);
-            mBackgroundImage.setBounds(0,0,width,height);
+            mResources.setSize(width, height);
             // Set complication size
-            mCenterX = mWidth / 2f;
-            mCenterY = mHeight / 2f;
-            //mHourHandLength = mCenterX - mHourHandOffset - 20;
-
-            Rect rect;
-            int complicationSize = width/5;
-            rect = new Rect(width/6,height/2,
-                    width/6+complicationSize,height/2+complicationSize);
-            mComplicationDrawables[0].setBounds(rect);
-            rect = new Rect(width/2-complicationSize/2,height/2+mCenterYOffset,
-                    width/2+complicationSize/2,height/2+mCenterYOffset+complicationSize);
-            mComplicationDrawables[1].setBounds(rect);
-            rect = new Rect(5*width/6-complicationSize,height/2,
-                    5*width/6,height/2+complicationSize);
-            mComplicationDrawables[2].setBounds(rect);
+            for (int i = 0; i < mComplicationDrawables.length; ++i) {
+                mComplicationDrawables[i].setBounds(mLayout.getSlotLeft(i),
+                        mLayout.getSlotTop(i), mLayout.getSlotRight(i), mLayout.getSlotBottom(i));
+                mComplicationImages.setSlotSize(i,
+                        mLayout.getSlotRight(i) - mLayout.getSlotLeft(i),
+                        mLayout.getSlotBottom(i) - mLayout.getSlotTop(i));
+            }
+            mRenderer.invalidateLayers();
+            if (mSeconds != null)
+                mSeconds.layout(mLayout);
+            mStaticLayerSaved = false;
+            if (useSharedStaticLayer())
+                mStaticLayerRestored = true;
+            if (mRestoredStaticLayer != null) {
+                Bitmap layer = mRestoredStaticLayer;
+                mRestoredStaticLayer = null;
+                restoreStaticLayer(layer, mRestoredTier, mRestoredTheme);
+            }
+        }
+        /**
+         * Uses the static layer another engine rendered for this size, tier and theme, if
+         * any. Called with {@link #mRenderLock} held.
+         */
+        private boolean useSharedStaticLayer() {
+            Bitmap layer = mPool.getStaticLayer(mWidth, mHeight, getQualityTier(),
+                    mPalette.getTheme());
+            if (layer == null)
+                return false;
+            mResources.setSharedLayer(DrawTarget.LAYER_STATIC, layer);
+            mRenderer.onStaticLayerRestored();
+            // the engine that rendered it saved it too
+            mStaticLayerSaved = true;
+            return true;
+        }
+        /**
+         * Offers the finished static layer to the other engines, see
+         * {@link RenderResourcePool#putStaticLayer}. Called with {@link #mRenderLock} held.
+         */
+        private void shareStaticLayer() {
+            Bitmap layer = mPool.putStaticLayer(mResources.getLayer(DrawTarget.LAYER_STATIC),
+                    getQualityTier(), mPalette.getTheme());
+            mResources.setSharedLayer(DrawTarget.LAYER_STATIC, layer);
+        }
+        /**
+         * Starts reading the static layer of the last run on the background thread, before
+         * the text cache. Watch faces cover the display, so its size is the likely surface
+         * size. The layer is handed to the UI thread when read; nothing waits for it.
+         */
+        private void restoreStaticLayerAsync(Resources res) {
+            mStaticLayerCache = new StaticLayerCache(FlatWatchFace.this);
+            final int width = res.getDisplayMetrics().widthPixels;
+            final int height = res.getDisplayMetrics().heightPixels;
+            final int tier = getQualityTier();
+            final int theme = mPalette.getTheme();
+            mBackgroundExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Bitmap layer = mStaticLayerCache.read(width, height, tier, theme);
+                    if (layer == null)
+                        return;
+                    mUpdateTimeHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onStaticLayerRead(layer, tier, theme);
+                        }
+                    });
+                }
+            });
+        }
+        /**
+         * Keeps the layer read from disk until the first surface if there is none yet, uses
+         * it otherwise.
+         */
+        private void onStaticLayerRead(Bitmap layer, int tier, int theme) {
+            // the engine is gone
+            if (mBackgroundExecutor.isShutdown()) {
+                layer.recycle();
+                return;
+            }
+            if (mWidth == 0) {
+                mRestoredStaticLayer = layer;
+                mRestoredTier = tier;
+                mRestoredTheme = theme;
+            } else {
+                restoreStaticLayer(layer, tier, theme);
+            }
+        }
+        /**
+         * Uses a static layer read from disk if no frame rendered one yet, nor another engine
+         * shared one, and the face still has its size, tier and theme. Then draws a frame with
+         * it.
+         */
+        private void restoreStaticLayer(Bitmap layer, int tier, int theme) {
+            synchronized (mRenderLock) {
+                boolean stale = layer.getWidth() != mWidth || layer.getHeight() != mHeight
+                        || tier != getQualityTier() || theme != mPalette.getTheme();
+                if (stale || mRenderer.isStaticLayerValid()) {
+                    layer.recycle();
+                    return;
+                }
+                mResources.setLayer(DrawTarget.LAYER_STATIC, layer);
+                mRenderer.onStaticLayerRestored();
+                mStaticLayerRestored = true;
+                mStaticLayerSaved = true;
+                shareStaticLayer();
+            }
+            invalidate();
+        }
+        /**
+         * Shares the static layer with the other engines, and stores it on the background
+         * thread for the next start. Shared layers are never drawn into or recycled, so the
+         * write needs no copy.
+         */
+        private void saveStaticLayer() {
+            mStaticLayerSaved = true;
+            final int tier = getQualityTier();
+            final int theme = mPalette.getTheme();
+            final Bitmap layer;
+            synchronized (mRenderLock) {
+                shareStaticLayer();
+                layer = mResources.getLayer(DrawTarget.LAYER_STATIC);
+            }
+            mBackgroundExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    mStaticLayerCache.write(layer, tier, theme);
+                }
+            });
+        }
+        /**
+         * Prepares the palette of the theme in the preferences on the background thread,
+         * with the static layer of the current surface and tier, then switches to it on the
+         * UI thread. Until then frames keep the old theme, so no draw waits for the new one.
+         */
+        private void onThemeChanged() {
+            final int theme = FacePalette.getTheme(mPreferences, getResources());
+            mRequestedTheme = theme;
+            final int width = mWidth;
+            final int height = mHeight;
+            final int tier = getQualityTier();
+            mBackgroundExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    final FacePalette palette = mPool.getPalette(theme);
+                    if (width > 0 && height > 0)
+                        prepareStaticLayer(palette, width, height, tier);
+                    mUpdateTimeHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            applyPalette(palette);
+                        }
+                    });
+                }
+            });
+        }
+        /**
+         * Renders the static layer of {@code palette} into the pool, unless an engine already
+         * did. Called on the background thread: it draws with a background drawable and
+         * layers of its own, so it does not hold {@link #mRenderLock}.
+         */
+        private void prepareStaticLayer(FacePalette palette, int width, int height, int tier) {
+            if (mPool.getStaticLayer(width, height, tier, palette.getTheme()) != null)
+                return;
+            FaceResources resources = new FaceResources(
+                    getDrawable(R.drawable.background).mutate(), new ComplicationDrawable[0]);
+            resources.setPalette(palette);
+            resources.setAntiAlias(tier < QualityGovernor.TIER_NO_ANTIALIAS);
+            resources.setSize(width, height);
+            FaceLayout layout = createLayout(mMinuteCircleOffset, mCenterYOffset);
+            layout.layout(width, height);
+            FaceRenderer renderer = new FaceRenderer(layout, mTimeYOffset, mDateYOffset, 0);
+            renderer.setQualityTier(tier);
+            renderer.prepareStaticLayer(new CanvasDrawTarget(resources));
+            Bitmap layer = resources.getLayer(DrawTarget.LAYER_STATIC);
+            if (mPool.putStaticLayer(layer, tier, palette.getTheme()) != layer)
+                layer.recycle();
+        }
+        /**
+         * Switches to {@code palette}, with the static layer prepared for it if the surface
+         * and tier did not change in the meantime.
+         */
+        private void applyPalette(FacePalette palette) {
+            // the engine is gone, or the theme changed again
+            if (mBackgroundExecutor.isShutdown() || palette.getTheme() != mRequestedTheme
+                    || palette == mPalette)
+                return;
+            synchronized (mRenderLock) {
+                mPalette = palette;
+                mResources.setPalette(palette);
+                mRenderer.invalidateLayers();
+                mStaticLayerSaved = false;
+                useSharedStaticLayer();
+            }
+            updateGlyphAtlases();
+            // The prepared frame was drawn in the old theme.
+            if (mFramePipeline != null)
+                mFramePipeline.clear();
+            mFrameScheduler.request(FrameScheduler.REASON_THEME);
         }
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            long cpuStart = mSecondsFramePending ? Debug.threadCpuTimeNanos() : 0;
+            if (mTraceEnabled)
+                Trace.beginSection("FlatWatchFace.onDraw");
+            try {
+                drawFrame(canvas);
+            } finally {
+                if (mTraceEnabled)
+                    Trace.endSection();
+                long end = SystemClock.elapsedRealtimeNanos();
+                long duration = end - start;
+                mMetrics.onFrameDrawn(duration, mAmbient);
+                if (mCreateNs >= 0) {
+                    mMetrics.onFirstFrame(end - mCreateNs, mStaticLayerRestored);
+                    mCreateNs = -1;
+                }
+                if (mQualityGovernor != null && !mAmbient
+                        && mQualityGovernor.onFrame(end, duration))
+                    applyQualityTier();
+                if (mSecondsFramePending) {
+                    mSecondsFramePending = false;
+                    onSecondsFrameDrawn(duration, cpuStart, false);
+                }
+                if (mPressEventTime >= 0 && mPressedSlot >= 0) {
+                    mMetrics.onTapFeedback(SystemClock.uptimeMillis() - mPressEventTime);
+                    mPressEventTime = -1;
+                }
+            }
+        }
+        private void drawFrame(Canvas canvas) {
+            drawFace(canvas);
+            if (!mAmbient && !mStaticLayerSaved) {
+                boolean valid;
+                synchronized (mRenderLock) {
+                    valid = mRenderer.isStaticLayerValid();
+                }
+                if (valid)
+                    saveStaticLayer();
+            }
+        }
+        private void drawFace(Canvas canvas) {
             long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            // Draw the background.
-            if (mAmbient)
-                canvas.drawColor(Color.BLACK);
-            else
-                mBackgroundImage.draw(canvas);
-            // Draw complications
-            for(ComplicationDrawable cd : mComplicationDrawables)
-                cd.draw(canvas,now);
-            // Draw digital part
-            String time = mTimeFormat.format(mCalendar.getTime());
-            String date = mDateFormat.format(mCalendar.getTime());
-            canvas.drawText(time, mCenterX, mCenterY - mTimeYOffset, mTimePaint);
-            canvas.drawText(date, mCenterX , mCenterY - mDateYOffset, mDatePaint);
-            // avoid drawing the analog part in ambient
-            if(!mAmbient) {
-                final float minutesRotation = mCalendar.get(Calendar.MINUTE) * 6f;
-                final float hoursRotation = (mCalendar.get(Calendar.HOUR) * 30) +
-                        mCalendar.get(Calendar.MINUTE) / 2f;
-                // save the canvas state before we begin to rotate it
-                canvas.save();
-                canvas.rotate(hoursRotation, mCenterX, mCenterY);
-                canvas.drawLine(mCenterX, 0, mCenterX, mMinuteCircleOffset, mHandHourPaint);
-                canvas.drawOval(innerCircle, mCirclePaint);
-                canvas.drawArc(innerCircle, -90 - hoursRotation, minutesRotation,
-                        false, mMinuteHandPaint);
-                // restore the canvas' original orientation.
-                canvas.restore();
-            }
-        }
-        /**
-         * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't
-         * currently or stops it if it shouldn't be running but currently is.
-         */
-        private void updateTimer() { //FIXME is it needed?
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
-            }
-        }
-        /**
-         * Returns whether the {@link #mUpdateTimeHandler} timer should be running.
-         * The timer should only run when we're visible and in interactive mode.
+            mFrameScheduler.onFrameDrawn(now, mAmbient);
+            int contentVersion = mFrameScheduler.getContentVersion();
+            synchronized (mRenderLock) {
+                mDrawTarget.setCanvas(canvas);
+                if (mAmbient)
+                    mComposer.drawAmbient(mDrawTarget, now, contentVersion);
+                else
+                    mComposer.drawInteractive(mDrawTarget, now, contentVersion, mPressedSlot,
+                            mSecondsRunning ? mSeconds : null);
+            }
+        }
+        @Override
+        public void publishSnapshot() {
+            synchronized (mRenderLock) {
+                Bitmap frame = mComposer.getShownFrame();
+                if (frame != null)
+                    FrameSnapshot.publish(frame);
+            }
+        }
+        /**
+         * Starts or stops seconds mode: it runs while the timer runs, i.e. only when visible
+         * and interactive.
+         */
+        private void updateSecondsMode() {
+            boolean running = mSeconds != null && shouldTimerBeRunning();
+            if (running == mSecondsRunning)
+                return;
+            mSecondsRunning = running;
+            mMetrics.onSecondsModeChanged(running);
+            if (running) {
+                // the frame on screen has no dot yet
+                mSeconds.reset();
+                Choreographer.getInstance().postFrameCallback(mSecondsCallback);
+            } else {
+                Choreographer.getInstance().removeFrameCallback(mSecondsCallback);
+                mSecondsFramePending = false;
+            }
+        }
+        /**
+         * Moves the seconds dot if its step changed, then waits for the vsync after the next
+         * step. With partial redraws only the area of the old and the new dot is repainted,
+         * from the cached frame layer; otherwise, or if the surface cannot be locked, the
+         * whole frame is drawn again.
+         */
+        private void handleSecondsFrame() {
+            if (!mSecondsRunning)
+                return;
+            long now = System.currentTimeMillis();
+            if (mSeconds.moveTo(now)) {
+                if (!mSecondsPartialRedraw || !drawSecondsPartial(now)) {
+                    mMetrics.onFrameRequested(FrameScheduler.REASON_SECONDS);
+                    mSecondsFramePending = true;
+                    invalidate();
+                }
+            }
+            Choreographer.getInstance().postFrameCallbackDelayed(mSecondsCallback,
+                    mSeconds.getDelayToNextMove(System.currentTimeMillis()));
+        }
+        /**
+         * Repaints the dirty area of {@link #mSeconds} only.
+         *
+         * @return false if the surface could not be locked
+         */
+        private boolean drawSecondsPartial(long now) {
+            long start = SystemClock.elapsedRealtimeNanos();
+            long cpuStart = Debug.threadCpuTimeNanos();
+            mSecondsDirty.set(mSeconds.getDirtyLeft(), mSeconds.getDirtyTop(),
+                    mSeconds.getDirtyRight(), mSeconds.getDirtyBottom());
+            // The surface may grow the rect, e.g. if it cannot copy back the last buffer:
+            // the frame layer covers whatever is asked for.
+            SurfaceHolder holder = getSurfaceHolder();
+            Canvas canvas = holder.lockCanvas(mSecondsDirty);
+            if (canvas == null)
+                return false;
+            boolean composed;
+            try {
+                synchronized (mRenderLock) {
+                    mDrawTarget.setCanvas(canvas);
+                    composed = mComposer.drawLive(mDrawTarget, now,
+                            mFrameScheduler.getContentVersion(), mPressedSlot, mSeconds);
+                }
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+            // The face changed, e.g. with the minute: only the dirty area shows it yet.
+            if (composed)
+                invalidate();
+            onSecondsFrameDrawn(SystemClock.elapsedRealtimeNanos() - start, cpuStart, true);
+            return true;
+        }
+        private void onSecondsFrameDrawn(long durationNs, long cpuStart, boolean partial) {
+            long cpuEnd = Debug.threadCpuTimeNanos();
+            // threadCpuTimeNanos returns -1 where it is not supported
+            mMetrics.onSecondsFrame(cpuStart >= 0 && cpuEnd >= 0 ? cpuEnd - cpuStart
+                    : durationNs, partial);
+            mSeconds.onFrameDrawn(durationNs);
+        }
+        /**
+         * Draws the interactive face for {@link #mFramePipeline}, on its background thread.
+         */
+        @Override
+        public void renderFrame(Canvas canvas, Calendar calendar, long timeMs,
+                                char[] time, char[] date, char[][] zoneLines) {
+            synchronized (mRenderLock) {
+                mPipelineTarget.setCanvas(canvas);
+                mRenderer.drawFace(mPipelineTarget, timeMs, calendar.get(Calendar.HOUR),
+                        calendar.get(Calendar.MINUTE), time, date, zoneLines);
+            }
+        }
+        @Override
+        public boolean isAmbient() {
+            return mAmbient;
+        }
+        @Override
+        public void onFrameRequired(int reasons) {
+            mMetrics.onFrameRequested(reasons);
+            invalidate();
+        }
+        @Override
+        public void onMinuteChanged(int reason) {
+            mMetrics.onWakeup();
+            mFrameScheduler.request(reason);
+            if (mFramePipeline != null && shouldTimerBeRunning()) {
+                long now = System.currentTimeMillis();
+                long delayMs = TimeUnit.MINUTES.toMillis(1)
+                        - (now % TimeUnit.MINUTES.toMillis(1)) - mPrerenderLeadMs;
+                mUpdateTimeHandler.removeMessages(MSG_PRERENDER);
+                if (delayMs > 0)
+                    mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_PRERENDER, delayMs);
+            }
+        }
+        private void dump(PrintWriter writer) {
+            writer.printf("Engine %s: %dx%d, ambient %b, preview %b%n",
+                    Integer.toHexString(hashCode()), mWidth, mHeight, mAmbient, isPreview());
+            if (mQualityGovernor != null)
+                writer.printf("  Quality tier %d, average frame %d us, battery %d%%%s%n",
+                        mQualityGovernor.getTier(), mQualityGovernor.getAverageFrameNs() / 1000,
+                        mBatteryLevel, mCharging ? ", charging" : "");
+            long pipelineBytes = mFramePipeline != null ? mFramePipeline.getByteCount() : 0;
+            synchronized (mRenderLock) {
+                writer.printf("  Memory of this engine: %d KB of layers, %d KB of pipeline "
+                                + "buffers%n", mResources.getPrivateByteCount() / 1024,
+                        pipelineBytes / 1024);
+            }
+            if (mSeconds != null)
+                writer.printf("  Seconds %s, %d Hz%n", mSecondsRunning ? "running" : "stopped",
+                        mSeconds.getRate());
+            mMetrics.dump(writer, mTickScheduler, mFrameScheduler, mComplicationFilter);
+        }
+        /**
+         * Starts pre-rendering the frame of the next minute. Only the UI thread may read the
+         * text cache, so the text is looked up here and handed to the pipeline.
+         */
+        private void handlePrerenderMessage() {
+            if (!shouldTimerBeRunning())
+                return;
+            long minuteMs = TimeUnit.MINUTES.toMillis(1);
+            long next = (System.currentTimeMillis() / minuteMs + 1) * minuteMs;
+            mPrerenderCalendar.setTimeZone(mCalendar.getTimeZone());
+            mPrerenderCalendar.setTimeInMillis(next);
+            // Peek, as building the next day's table would drop the current one for the last
+            // minute of the day: the midnight frame is rendered live, which builds it.
+            char[] time = mTextCache.peekTime(mPrerenderCalendar);
+            char[] date = mTextCache.peekDate(mPrerenderCalendar);
+            if (time != null && date != null)
+                mFramePipeline.prepare(next, mCalendar.getTimeZone(),
+                        mFrameScheduler.getContentVersion(), time, date,
+                        mComposer.getZoneLines(next));
+        }
+        /**
+         * Starts the minute aligned wakeups of {@link #mTickScheduler} if they should be running,
+         * or stops them otherwise. In ambient mode the system time tick is enough.
+         */
+        private void updateTimer() {
+            mTickScheduler.setRunning(shouldTimerBeRunning());
+            if (!shouldTimerBeRunning())
+                mUpdateTimeHandler.removeMessages(MSG_PRERENDER);
+            updateSecondsMode();
+        }
+        /**
+         * Returns whether the {@link #mTickScheduler} wakeups should be running.
+         * They should only run when we're visible and in interactive mode.
          */
         private boolean shouldTimerBeRunning() {
             return isVisible() && !isInAmbientMode();
         }
         /**
-         * Handle updating the time periodically in interactive mode.
+         * Handle the minute aligned wakeup in interactive mode.
          */
         private void handleUpdateTimeMessage() {
-            invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-            }
+            mTickScheduler.onAlarm();
         }
     }
 }
\ No newline at end of file
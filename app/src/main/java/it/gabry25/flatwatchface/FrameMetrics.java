@@ -0,0 +1,204 @@
+package it.gabry25.flatwatchface;
+
+import android.os.SystemClock;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation free counters about the frames of one engine: draw duration histogram, redraw
+ * causes, wakeups and time spent in ambient and interactive mode. Only touched on the UI
+ * thread, printed by {@link FlatWatchFace#dump}.
+ */
+class FrameMetrics {
+    /**
+     * Upper bounds of the draw duration buckets, in microseconds. The last bucket is open.
+     */
+    private static final int[] DURATION_BUCKETS_US = {
+            250, 500, 1000, 2000, 4000, 8000, 16000, 33000
+    };
+    /**
+     * Upper bounds of the tap feedback latency buckets, in milliseconds. 16 ms is one frame.
+     */
+    private static final int[] TAP_LATENCY_BUCKETS_MS = {
+            8, 16, 33, 66
+    };
+    private static final String[] REASON_NAMES = {
+            "time tick", "timer", "complication", "tap", "visibility", "time zone", "quality",
+            "seconds", "theme"
+    };
+
+    private final int[] mDurationCounts = new int[DURATION_BUCKETS_US.length + 1];
+    private final int[] mAmbientDurationCounts = new int[DURATION_BUCKETS_US.length + 1];
+    private final int[] mReasonCounts = new int[FrameScheduler.REASON_COUNT];
+    private final int[] mComplicationCounts;
+    private final int[] mTapLatencyCounts = new int[TAP_LATENCY_BUCKETS_MS.length + 1];
+    private long mMaxTapLatencyMs;
+    // -1 until the first frame is drawn
+    private long mFirstFrameNs = -1;
+    private boolean mFirstFrameRestored;
+    private final long mStartMs = SystemClock.elapsedRealtime();
+    private long mFrames;
+    private long mTotalDrawNs;
+    private long mMaxDrawNs;
+    private int mWakeups;
+    private boolean mAmbient;
+    private long mModeSinceMs = mStartMs;
+    private long mAmbientMs;
+    private long mInteractiveMs;
+    // seconds mode: time on, frames drawn with the dot and their thread CPU time
+    private boolean mSecondsRunning;
+    private long mSecondsSinceMs;
+    private long mSecondsMs;
+    private long mSecondsPartialFrames;
+    private long mSecondsFullFrames;
+    private long mSecondsCpuNs;
+
+    FrameMetrics(int complications) {
+        mComplicationCounts = new int[complications];
+    }
+
+    void onFrameDrawn(long durationNs, boolean ambient) {
+        ++mFrames;
+        mTotalDrawNs += durationNs;
+        if (durationNs > mMaxDrawNs)
+            mMaxDrawNs = durationNs;
+        long us = durationNs / 1000;
+        int bucket = 0;
+        while (bucket < DURATION_BUCKETS_US.length && us > DURATION_BUCKETS_US[bucket])
+            ++bucket;
+        int[] counts = ambient ? mAmbientDurationCounts : mDurationCounts;
+        ++counts[bucket];
+    }
+
+    /**
+     * Counts the reasons of a frame dispatched by {@link FrameScheduler}.
+     */
+    void onFrameRequested(int reasons) {
+        for (int i = 0; i < mReasonCounts.length; ++i)
+            if ((reasons & (1 << i)) != 0)
+                ++mReasonCounts[i];
+    }
+
+    /**
+     * Records the time from a touch to the end of the frame drawing its feedback.
+     */
+    void onTapFeedback(long latencyMs) {
+        if (latencyMs > mMaxTapLatencyMs)
+            mMaxTapLatencyMs = latencyMs;
+        int bucket = 0;
+        while (bucket < TAP_LATENCY_BUCKETS_MS.length
+                && latencyMs > TAP_LATENCY_BUCKETS_MS[bucket])
+            ++bucket;
+        ++mTapLatencyCounts[bucket];
+    }
+
+    /**
+     * Records the time from the creation of the engine to the end of its first frame.
+     *
+     * @param restored whether the static layer came from the disk cache
+     */
+    void onFirstFrame(long durationNs, boolean restored) {
+        mFirstFrameNs = durationNs;
+        mFirstFrameRestored = restored;
+    }
+
+    void onComplicationUpdate(int complicationId) {
+        ++mComplicationCounts[complicationId];
+    }
+
+    /**
+     * Counts a wakeup of the engine for a new minute, from the timer or the system tick.
+     */
+    void onWakeup() {
+        ++mWakeups;
+    }
+
+    void onAmbientModeChanged(boolean ambient) {
+        long now = SystemClock.elapsedRealtime();
+        accumulateMode(now);
+        mAmbient = ambient;
+    }
+
+    void onSecondsModeChanged(boolean running) {
+        long now = SystemClock.elapsedRealtime();
+        accumulateSeconds(now);
+        mSecondsRunning = running;
+    }
+
+    /**
+     * Records a frame drawn while seconds mode is on.
+     *
+     * @param cpuNs   thread CPU time of the frame
+     * @param partial whether only the area around the dot was repainted
+     */
+    void onSecondsFrame(long cpuNs, boolean partial) {
+        if (partial)
+            ++mSecondsPartialFrames;
+        else
+            ++mSecondsFullFrames;
+        mSecondsCpuNs += cpuNs;
+    }
+
+    private void accumulateSeconds(long now) {
+        if (mSecondsRunning)
+            mSecondsMs += now - mSecondsSinceMs;
+        mSecondsSinceMs = now;
+    }
+
+    private void accumulateMode(long now) {
+        if (mAmbient)
+            mAmbientMs += now - mModeSinceMs;
+        else
+            mInteractiveMs += now - mModeSinceMs;
+        mModeSinceMs = now;
+    }
+
+    void dump(PrintWriter writer, TickScheduler tickScheduler, FrameScheduler frameScheduler,
+              ComplicationFilter complicationFilter) {
+        long now = SystemClock.elapsedRealtime();
+        accumulateMode(now);
+        accumulateSeconds(now);
+        double hours = Math.max(now - mStartMs, 1) / (double) TimeUnit.HOURS.toMillis(1);
+        writer.printf("  frames: %d, avg %.2f ms, max %.2f ms%n", mFrames,
+                mFrames == 0 ? 0 : mTotalDrawNs / 1e6 / mFrames, mMaxDrawNs / 1e6);
+        if (mFirstFrameNs >= 0)
+            writer.printf("  first frame %.2f ms after create, static layer %s%n",
+                    mFirstFrameNs / 1e6, mFirstFrameRestored ? "restored" : "rendered");
+        writer.println("  draw duration (interactive / ambient):");
+        for (int i = 0; i < mDurationCounts.length; ++i) {
+            String bound = i < DURATION_BUCKETS_US.length
+                    ? "<= " + DURATION_BUCKETS_US[i] + " us"
+                    : "> " + DURATION_BUCKETS_US[DURATION_BUCKETS_US.length - 1] + " us";
+            writer.printf("    %-12s %6d / %6d%n", bound, mDurationCounts[i],
+                    mAmbientDurationCounts[i]);
+        }
+        writer.println("  redraw causes:");
+        for (int i = 0; i < mReasonCounts.length; ++i)
+            writer.printf("    %-12s %6d%n", REASON_NAMES[i], mReasonCounts[i]);
+        for (int i = 0; i < mComplicationCounts.length; ++i)
+            writer.printf("    complication %d updates %d, identical %d, deferred %d, "
+                            + "superseded %d%n", i, mComplicationCounts[i],
+                    complicationFilter.getIdenticalCount(i),
+                    complicationFilter.getDeferredCount(i),
+                    complicationFilter.getSupersededCount(i));
+        writer.printf("  tap feedback latency, max %d ms:%n", mMaxTapLatencyMs);
+        for (int i = 0; i < mTapLatencyCounts.length; ++i) {
+            String bound = i < TAP_LATENCY_BUCKETS_MS.length
+                    ? "<= " + TAP_LATENCY_BUCKETS_MS[i] + " ms"
+                    : "> " + TAP_LATENCY_BUCKETS_MS[TAP_LATENCY_BUCKETS_MS.length - 1] + " ms";
+            writer.printf("    %-12s %6d%n", bound, mTapLatencyCounts[i]);
+        }
+        writer.printf("  skipped frames: %d%n", frameScheduler.getSkippedFrameCount());
+        writer.printf("  wakeups: %d (%.1f per hour), timer %d, dropped ticks %d%n", mWakeups,
+                mWakeups / hours, tickScheduler.getWakeupCount(),
+                tickScheduler.getDroppedTickCount());
+        writer.printf("  ambient %d s, interactive %d s%n",
+                TimeUnit.MILLISECONDS.toSeconds(mAmbientMs),
+                TimeUnit.MILLISECONDS.toSeconds(mInteractiveMs));
+        if (mSecondsMs > 0)
+            writer.printf("  seconds mode %d s, frames %d partial / %d full, cpu %.2f ms per s%n",
+                    TimeUnit.MILLISECONDS.toSeconds(mSecondsMs), mSecondsPartialFrames,
+                    mSecondsFullFrames, mSecondsCpuNs / 1e3 / mSecondsMs);
+    }
+}
@@ -0,0 +1,138 @@
+package it.gabry25.flatwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+/**
+ * Renders the frame of the next minute ahead of time on a background thread, so that when the
+ * minute changes the engine only has to blit a ready bitmap. A prepared frame is used only if
+ * nothing it depends on (minute, complication content, surface) changed in the meantime,
+ * otherwise the engine falls back to a live render.
+ */
+class FramePipeline {
+    private static final long MINUTE_MS = 60 * 1000;
+
+    interface Renderer {
+        /**
+         * Draws the interactive face for {@code timeMs}. Called on the background thread.
+         *
+         * @param zoneLines text of the other time zones, or null
+         */
+        void renderFrame(Canvas canvas, Calendar calendar, long timeMs, char[] time, char[] date,
+                         char[][] zoneLines);
+    }
+
+    private final Executor mExecutor;
+    private final Renderer mRenderer;
+    // Background thread only.
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final Canvas mCanvas = new Canvas();
+    // Guarded by this.
+    private final Bitmap[] mBuffers = new Bitmap[2];
+    private int mWidth;
+    private int mHeight;
+    private int mGeneration;
+    private int mReadyBuffer = -1;
+    private long mReadyMinute;
+    private int mReadyVersion;
+
+    FramePipeline(Executor executor, Renderer renderer) {
+        mExecutor = executor;
+        mRenderer = renderer;
+    }
+
+    /**
+     * Sets the surface size and drops any prepared frame. The old buffers are not recycled,
+     * as a render may still be writing into one of them: its result is discarded instead.
+     */
+    synchronized void setSize(int width, int height) {
+        if (width == mWidth && height == mHeight)
+            return;
+        clear();
+        mWidth = width;
+        mHeight = height;
+        for (int i = 0; i < mBuffers.length; ++i)
+            mBuffers[i] = null;
+    }
+
+    /**
+     * Drops any prepared frame, and any frame still being rendered.
+     */
+    synchronized void clear() {
+        ++mGeneration;
+        mReadyBuffer = -1;
+    }
+
+    /**
+     * Starts rendering the frame for {@code timeMs} into the spare buffer.
+     *
+     * @param timeZone       zone of the engine calendar, for the hands of the frame
+     * @param contentVersion version of the complication content the frame will show
+     * @param zoneLines      text of the other time zones for that minute, or null
+     */
+    synchronized void prepare(final long timeMs, final TimeZone timeZone,
+                              final int contentVersion, final char[] time, final char[] date,
+                              final char[][] zoneLines) {
+        if (mWidth <= 0 || mHeight <= 0)
+            return;
+        final int generation = ++mGeneration;
+        final int index = mReadyBuffer == 0 ? 1 : 0;
+        mReadyBuffer = -1;
+        if (mBuffers[index] == null)
+            mBuffers[index] = Bitmap.createBitmap(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+        final Bitmap buffer = mBuffers[index];
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (FramePipeline.this) {
+                    if (generation != mGeneration)
+                        return;
+                }
+                // the zone may have changed since the last frame
+                mCalendar.setTimeZone(timeZone);
+                mCalendar.setTimeInMillis(timeMs);
+                mCanvas.setBitmap(buffer);
+                mRenderer.renderFrame(mCanvas, mCalendar, timeMs, time, date, zoneLines);
+                mCanvas.setBitmap(null);
+                synchronized (FramePipeline.this) {
+                    if (generation != mGeneration)
+                        return;
+                    mReadyBuffer = index;
+                    mReadyMinute = timeMs / MINUTE_MS;
+                    mReadyVersion = contentVersion;
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the prepared frame if it shows the minute of {@code timeMs} with the given
+     * complication content, null otherwise.
+     */
+    synchronized Bitmap take(long timeMs, int contentVersion) {
+        if (mReadyBuffer < 0 || mReadyMinute != timeMs / MINUTE_MS
+                || mReadyVersion != contentVersion)
+            return null;
+        return mBuffers[mReadyBuffer];
+    }
+
+    /**
+     * Returns the bytes of the frame buffers.
+     */
+    synchronized long getByteCount() {
+        long bytes = 0;
+        for (Bitmap buffer : mBuffers) {
+            if (buffer != null)
+                bytes += buffer.getAllocationByteCount();
+        }
+        return bytes;
+    }
+
+    synchronized void release() {
+        setSize(0, 0);
+    }
+}
@@ -0,0 +1,138 @@
+package it.gabry25.flatwatchface;
+
+import android.os.Handler;
+
+/**
+ * Collects the redraw requests of the watch face and turns them into at most one frame per
+ * coalescing window. Each request carries a reason bit; when the window expires the frame is
+ * drawn only if the visible state (minute, ambient mode, complication content) changed since
+ * the last drawn frame, or if one of the reasons always needs a redraw.
+ * <p>
+ * Time ticks, and every request in ambient mode, are dispatched at once: the tick is the
+ * frame of the new minute, and in ambient nothing else comes often enough to merge with.
+ */
+class FrameScheduler {
+    static final int REASON_TIME_TICK = 1;
+    static final int REASON_TIMER = 1 << 1;
+    static final int REASON_COMPLICATION = 1 << 2;
+    static final int REASON_TAP = 1 << 3;
+    static final int REASON_VISIBILITY = 1 << 4;
+    static final int REASON_TIME_ZONE = 1 << 5;
+    static final int REASON_QUALITY = 1 << 6;
+    /**
+     * A full frame for a move of the seconds dot; like taps, these do not wait for a window.
+     */
+    static final int REASON_SECONDS = 1 << 7;
+    static final int REASON_THEME = 1 << 8;
+    static final int REASON_COUNT = 9;
+
+    /**
+     * Reasons that change what is shown without changing the minute, the ambient mode or the
+     * complication content.
+     */
+    private static final int FORCED_REASONS = REASON_VISIBILITY | REASON_TIME_ZONE
+            | REASON_QUALITY | REASON_THEME;
+    /**
+     * Reasons that never wait for a window.
+     */
+    private static final int IMMEDIATE_REASONS = REASON_TIME_TICK;
+    private static final long MINUTE_MS = 60 * 1000;
+
+    interface Callback {
+        boolean isAmbient();
+
+        /**
+         * Called on the handler thread when a frame has to be drawn.
+         */
+        void onFrameRequired(int reasons);
+    }
+
+    private final Handler mHandler;
+    private final Callback mCallback;
+    private final long mWindowMs;
+    private final Runnable mDispatch = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+    private int mPendingReasons;
+    private int mContentVersion;
+    private long mDrawnMinute = -1;
+    private boolean mDrawnAmbient;
+    private int mDrawnContentVersion = -1;
+    private int mSkippedFrames;
+
+    FrameScheduler(Handler handler, Callback callback, long windowMs) {
+        mHandler = handler;
+        mCallback = callback;
+        mWindowMs = windowMs;
+    }
+
+    /**
+     * Requests a frame. Requests made within the same window are merged, except for time
+     * ticks and in ambient mode, which dispatch right away along with any pending request.
+     */
+    void request(int reason) {
+        if ((reason & IMMEDIATE_REASONS) != 0 || mCallback.isAmbient()) {
+            mHandler.removeCallbacks(mDispatch);
+            mPendingReasons |= reason;
+            dispatch();
+            return;
+        }
+        if (mPendingReasons == 0)
+            mHandler.postDelayed(mDispatch, mWindowMs);
+        mPendingReasons |= reason;
+    }
+
+    /**
+     * Requests a frame for something whose content changed, like a complication.
+     */
+    void contentChanged(int reason) {
+        ++mContentVersion;
+        request(reason);
+    }
+
+    /**
+     * Records the state shown by a frame, whoever asked for it.
+     */
+    void onFrameDrawn(long timeMs, boolean ambient) {
+        mDrawnMinute = timeMs / MINUTE_MS;
+        mDrawnAmbient = ambient;
+        mDrawnContentVersion = mContentVersion;
+    }
+
+    /**
+     * Version of the content shown, incremented by {@link #contentChanged(int)}.
+     */
+    int getContentVersion() {
+        return mContentVersion;
+    }
+
+    /**
+     * Number of dispatches that did not need a frame because nothing visible changed.
+     */
+    int getSkippedFrameCount() {
+        return mSkippedFrames;
+    }
+
+    void cancel() {
+        mHandler.removeCallbacks(mDispatch);
+        mPendingReasons = 0;
+    }
+
+    private void dispatch() {
+        int reasons = mPendingReasons;
+        mPendingReasons = 0;
+        if ((reasons & FORCED_REASONS) != 0 || isStale(System.currentTimeMillis()))
+            mCallback.onFrameRequired(reasons);
+        else
+            ++mSkippedFrames;
+    }
+
+    private boolean isStale(long timeMs) {
+        return timeMs / MINUTE_MS != mDrawnMinute
+                || mCallback.isAmbient() != mDrawnAmbient
+                || mContentVersion != mDrawnContentVersion;
+    }
+}
@@ -0,0 +1,91 @@
+package it.gabry25.flatwatchface;
+
+import android.graphics.Bitmap;
+
+/**
+ * The last face composed by an engine, so {@link ConfigActivity} can show it without rendering
+ * the face again. Engine and activity run on the main thread of the same process, so the
+ * frame is handed over as an immutable copy of the bitmap.
+ * <p>
+ * Frames are copied only while a reader is open: with none, publishing is a counter check.
+ * Opening a reader asks the visible engine for the frame it shows, as it does not draw while
+ * the activity covers it. Main thread only.
+ */
+class FrameSnapshot {
+    /**
+     * An engine that can publish the frame it shows at any time.
+     */
+    interface Source {
+        /**
+         * Publishes the last frame drawn, if any.
+         */
+        void publishSnapshot();
+    }
+
+    private static Source sSource;
+    private static int sReaderCount;
+    private static Bitmap sFrame;
+
+    private FrameSnapshot() {
+    }
+
+    /**
+     * Sets the engine asked for a frame when a reader opens.
+     */
+    static void setSource(Source source) {
+        sSource = source;
+    }
+
+    static void clearSource(Source source) {
+        if (sSource == source)
+            sSource = null;
+    }
+
+    /**
+     * Hands a copy of {@code frame} to the readers, if any are open.
+     */
+    static void publish(Bitmap frame) {
+        if (sReaderCount == 0 || frame.isRecycled())
+            return;
+        sFrame = frame.copy(frame.getConfig(), false);
+    }
+
+    static Reader openReader() {
+        ++sReaderCount;
+        if (sSource != null)
+            sSource.publishSnapshot();
+        return new Reader();
+    }
+
+    /**
+     * A registration for the published frames, to be closed when no longer shown.
+     */
+    static final class Reader {
+        private Bitmap mFrame;
+        private boolean mClosed;
+
+        private Reader() {
+        }
+
+        /**
+         * Returns the frame if a new one was published since the last call, null otherwise.
+         * The frame is immutable and stays valid after later ones are published.
+         */
+        Bitmap poll() {
+            Bitmap frame = sFrame;
+            if (mClosed || frame == null || frame == mFrame)
+                return null;
+            mFrame = frame;
+            return frame;
+        }
+
+        void close() {
+            if (mClosed)
+                return;
+            mClosed = true;
+            mFrame = null;
+            if (--sReaderCount == 0)
+                sFrame = null;
+        }
+    }
+}
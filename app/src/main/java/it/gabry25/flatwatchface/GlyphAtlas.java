@@ -0,0 +1,128 @@
+package it.gabry25.flatwatchface;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * A small set of glyphs rasterized once with a paint into a single bitmap, so a text made of
+ * them is drawn as one bitmap blit per glyph instead of going through text layout. Used for
+ * the time, which only needs digits, the separator and the AM/PM markers.
+ * <p>
+ * The atlas is rasterized again when the size, color, anti-aliasing or typeface of the paint
+ * change. Glyphs are placed at whole pixels with their own advances, without kerning.
+ * Atlases are shared by the engines through {@link RenderResourcePool}, so drawing is
+ * synchronized.
+ */
+class GlyphAtlas {
+    private final String mGlyphs;
+    // Source cell of every glyph in the bitmap, and where it starts from the pen position.
+    private final int[] mCellLeft;
+    private final int[] mCellRight;
+    private final int[] mCellOffset;
+    private final float[] mAdvances;
+    private final Rect mSrc = new Rect();
+    private final Rect mDst = new Rect();
+    private Bitmap mBitmap;
+    private int mBaseline;
+    // Paint configuration of the bitmap.
+    private float mTextSize;
+    private int mColor;
+    private boolean mAntiAlias;
+    private Typeface mTypeface;
+
+    /**
+     * @param glyphs the characters of the atlas
+     */
+    GlyphAtlas(String glyphs) {
+        mGlyphs = glyphs;
+        mCellLeft = new int[glyphs.length()];
+        mCellRight = new int[glyphs.length()];
+        mCellOffset = new int[glyphs.length()];
+        mAdvances = new float[glyphs.length()];
+    }
+
+    /**
+     * Draws {@code text} like {@link Canvas#drawText(char[], int, int, float, float, Paint)}.
+     *
+     * @return false, drawing nothing, if a character of the text is not in the atlas
+     */
+    synchronized boolean draw(Canvas canvas, char[] text, float x, float y, Paint paint) {
+        for (char c : text) {
+            if (mGlyphs.indexOf(c) < 0)
+                return false;
+        }
+        if (mBitmap == null || !matches(paint))
+            rasterize(paint);
+        float width = 0;
+        for (char c : text)
+            width += mAdvances[mGlyphs.indexOf(c)];
+        Paint.Align align = paint.getTextAlign();
+        float pen = align == Paint.Align.CENTER ? x - width / 2
+                : align == Paint.Align.RIGHT ? x - width : x;
+        int top = Math.round(y) - mBaseline;
+        int height = mBitmap.getHeight();
+        for (char c : text) {
+            int glyph = mGlyphs.indexOf(c);
+            int left = Math.round(pen) + mCellOffset[glyph];
+            mSrc.set(mCellLeft[glyph], 0, mCellRight[glyph], height);
+            mDst.set(left, top, left + mCellRight[glyph] - mCellLeft[glyph], top + height);
+            canvas.drawBitmap(mBitmap, mSrc, mDst, null);
+            pen += mAdvances[glyph];
+        }
+        return true;
+    }
+
+    private boolean matches(Paint paint) {
+        return paint.getTextSize() == mTextSize && paint.getColor() == mColor
+                && paint.isAntiAlias() == mAntiAlias && paint.getTypeface() == mTypeface;
+    }
+
+    private void rasterize(Paint paint) {
+        release();
+        Paint glyphPaint = new Paint(paint);
+        glyphPaint.setTextAlign(Paint.Align.LEFT);
+        Paint.FontMetricsInt metrics = glyphPaint.getFontMetricsInt();
+        char[] glyph = new char[1];
+        Rect bounds = new Rect();
+        int width = 0;
+        for (int i = 0; i < mGlyphs.length(); ++i) {
+            glyph[0] = mGlyphs.charAt(i);
+            glyphPaint.getTextBounds(glyph, 0, 1, bounds);
+            mAdvances[i] = glyphPaint.measureText(glyph, 0, 1);
+            // a pixel of margin for the anti-aliased edges
+            int left = Math.min(bounds.left, 0) - 1;
+            int right = Math.max(bounds.right, (int) Math.ceil(mAdvances[i])) + 1;
+            mCellOffset[i] = left;
+            mCellLeft[i] = width;
+            width += right - left;
+            mCellRight[i] = width;
+        }
+        mBaseline = 1 - metrics.top;
+        mBitmap = Bitmap.createBitmap(Math.max(width, 1), metrics.bottom - metrics.top + 2,
+                Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(mBitmap);
+        for (int i = 0; i < mGlyphs.length(); ++i) {
+            glyph[0] = mGlyphs.charAt(i);
+            canvas.drawText(glyph, 0, 1, mCellLeft[i] - mCellOffset[i], mBaseline, glyphPaint);
+        }
+        mBitmap.prepareToDraw();
+        mTextSize = paint.getTextSize();
+        mColor = paint.getColor();
+        mAntiAlias = paint.isAntiAlias();
+        mTypeface = paint.getTypeface();
+    }
+
+    synchronized int getByteCount() {
+        return mBitmap != null ? mBitmap.getAllocationByteCount() : 0;
+    }
+
+    synchronized void release() {
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package it.gabry25.flatwatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.Icon;
+import android.os.Build;
+import android.os.Handler;
+import android.util.LruCache;
+
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process wide LRU cache of complication images, decoded and scaled to the size they are
+ * drawn at, with a byte budget. Icons are decoded on a background thread.
+ * <p>
+ * Resource and URI icons are identified without loading them (from P on, where their
+ * accessors are public); any other icon is loaded on the background thread and identified by
+ * a hash of its pixels, which still saves the scaling and the work of the drawable.
+ */
+class IconCache {
+    private static IconCache sInstance;
+
+    interface Callback {
+        /**
+         * Called on the handler thread with the scaled image, or null if the icon could not
+         * be loaded.
+         */
+        void onIconLoaded(Bitmap bitmap);
+    }
+
+    private final Context mContext;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final LruCache<String, Bitmap> mCache;
+    // Guarded by this.
+    private int mHits;
+    private int mMisses;
+    private int mDecodes;
+    private int mFailures;
+
+    /**
+     * Returns the cache of the process, created on first use.
+     */
+    static synchronized IconCache getInstance(Context context) {
+        if (sInstance == null)
+            sInstance = new IconCache(context.getApplicationContext(),
+                    context.getResources().getInteger(R.integer.icon_cache_kb) * 1024);
+        return sInstance;
+    }
+
+    private IconCache(Context context, int maxBytes) {
+        mContext = context;
+        mCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * Returns the image of {@code icon} scaled for a {@code width} x {@code height} box if
+     * it is cached and can be identified without loading it, null otherwise.
+     */
+    Bitmap peek(Icon icon, int width, int height) {
+        String key = keyOf(icon, width, height);
+        Bitmap bitmap = key != null ? mCache.get(key) : null;
+        synchronized (this) {
+            if (bitmap != null)
+                ++mHits;
+            else
+                ++mMisses;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Loads the image of {@code icon} scaled for a {@code width} x {@code height} box, from
+     * the cache if possible, and delivers it to {@code callback} on {@code handler}.
+     */
+    void load(final Icon icon, final int width, final int height, final Handler handler,
+              final Callback callback) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = loadBlocking(icon, width, height);
+                handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onIconLoaded(bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        writer.printf("Icon cache: %d / %d KB, hits %d, misses %d, evictions %d, "
+                        + "decodes %d, failures %d%n", mCache.size() / 1024,
+                mCache.maxSize() / 1024, mHits, mMisses, mCache.evictionCount(), mDecodes,
+                mFailures);
+    }
+
+    private Bitmap loadBlocking(Icon icon, int width, int height) {
+        String key = keyOf(icon, width, height);
+        Bitmap bitmap = key != null ? mCache.get(key) : null;
+        if (bitmap != null)
+            return bitmap;
+        Drawable drawable = icon.loadDrawable(mContext);
+        if (drawable == null) {
+            synchronized (this) {
+                ++mFailures;
+            }
+            return null;
+        }
+        if (key == null && drawable instanceof BitmapDrawable) {
+            key = "hash:" + hash(((BitmapDrawable) drawable).getBitmap()) + ":" + width + "x"
+                    + height;
+            bitmap = mCache.get(key);
+            if (bitmap != null)
+                return bitmap;
+        }
+        bitmap = scale(drawable, width, height);
+        synchronized (this) {
+            ++mDecodes;
+        }
+        if (key != null)
+            mCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Draws {@code drawable} into a new bitmap that fits a {@code width} x {@code height}
+     * box, keeping its aspect ratio.
+     */
+    private static Bitmap scale(Drawable drawable, int width, int height) {
+        int intrinsicWidth = drawable.getIntrinsicWidth();
+        int intrinsicHeight = drawable.getIntrinsicHeight();
+        if (intrinsicWidth > 0 && intrinsicHeight > 0) {
+            float scale = Math.min(width / (float) intrinsicWidth,
+                    height / (float) intrinsicHeight);
+            width = Math.max(Math.round(intrinsicWidth * scale), 1);
+            height = Math.max(Math.round(intrinsicHeight * scale), 1);
+        }
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, width, height);
+        drawable.draw(new Canvas(bitmap));
+        bitmap.prepareToDraw();
+        return bitmap;
+    }
+
+    private static String keyOf(Icon icon, int width, int height) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P)
+            return null;
+        switch (icon.getType()) {
+            case Icon.TYPE_RESOURCE:
+                return "res:" + icon.getResPackage() + "/" + icon.getResId() + ":" + width
+                        + "x" + height;
+            case Icon.TYPE_URI:
+                return "uri:" + icon.getUri() + ":" + width + "x" + height;
+            default:
+                return null;
+        }
+    }
+
+    private static long hash(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int[] row = new int[width];
+        long hash = 1125899906842597L;
+        for (int y = 0; y < bitmap.getHeight(); ++y) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int pixel : row)
+                hash = 31 * hash + pixel;
+        }
+        return 31 * (31 * hash + width) + bitmap.getHeight();
+    }
+}
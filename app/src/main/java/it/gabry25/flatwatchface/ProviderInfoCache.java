@@ -0,0 +1,121 @@
+package it.gabry25.flatwatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.support.wearable.complications.ComplicationProviderInfo;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Last known provider of every complication slot, kept in the cache dir so
+ * {@link ConfigActivity} can show it before the provider info is retrieved again. Each slot
+ * is a small file with the provider name and its icon, scaled down and PNG encoded.
+ * The methods do disk I/O and must not be called on the UI thread.
+ */
+class ProviderInfoCache {
+    private static final String TAG = "ProviderInfoCache";
+    private static final int VERSION = 1;
+
+    /**
+     * A cached provider; an empty slot has a null name and icon.
+     */
+    static final class Entry {
+        final String mName;
+        final Bitmap mIcon;
+
+        Entry(String name, Bitmap icon) {
+            mName = name;
+            mIcon = icon;
+        }
+    }
+
+    private final Context mContext;
+    private final File mDir;
+    private final int mIconSize;
+
+    /**
+     * @param iconSize side of the cached icons, in pixels
+     */
+    ProviderInfoCache(Context context, int iconSize) {
+        mContext = context.getApplicationContext();
+        mDir = new File(context.getCacheDir(), "provider_info");
+        mIconSize = iconSize;
+    }
+
+    /**
+     * Returns the cached provider of {@code slot}, or null if there is none.
+     */
+    Entry read(int slot) {
+        File file = file(slot);
+        if (!file.exists())
+            return null;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != VERSION)
+                return null;
+            if (!in.readBoolean())
+                return new Entry(null, null);
+            String name = in.readUTF();
+            byte[] png = new byte[in.readInt()];
+            in.readFully(png);
+            return new Entry(name, png.length > 0
+                    ? BitmapFactory.decodeByteArray(png, 0, png.length) : null);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the provider of {@code slot}, null for an empty slot.
+     */
+    void write(int slot, ComplicationProviderInfo info) {
+        if (!mDir.isDirectory() && !mDir.mkdirs())
+            return;
+        File file = file(slot);
+        File temp = new File(mDir, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(VERSION);
+            out.writeBoolean(info != null);
+            if (info != null) {
+                out.writeUTF(info.providerName != null ? info.providerName : "");
+                byte[] png = encodeIcon(info);
+                out.writeInt(png.length);
+                out.write(png);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write " + file, e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file))
+            temp.delete();
+    }
+
+    private byte[] encodeIcon(ComplicationProviderInfo info) {
+        Drawable drawable = info.providerIcon != null
+                ? info.providerIcon.loadDrawable(mContext) : null;
+        if (drawable == null)
+            return new byte[0];
+        Bitmap bitmap = Bitmap.createBitmap(mIconSize, mIconSize, Bitmap.Config.ARGB_8888);
+        drawable.setBounds(0, 0, mIconSize, mIconSize);
+        drawable.draw(new Canvas(bitmap));
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, png);
+        bitmap.recycle();
+        return png.toByteArray();
+    }
+
+    private File file(int slot) {
+        return new File(mDir, "slot_" + slot);
+    }
+}
@@ -0,0 +1,187 @@
+package it.gabry25.flatwatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import java.io.PrintWriter;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Render assets shared by the engines of the process: the system can run several at once
+ * (the active face and the previews of the picker and the companion). It holds rasterized
+ * static layers by surface size, quality tier and theme, the glyph atlases of the time, the
+ * date formatters and the {@link FacePalette} of each theme in use.
+ * <p>
+ * Every engine acquires the pool in onCreate and releases it in onDestroy; the last release
+ * drops everything. Shared bitmaps are only read once they are in the pool, so they are
+ * never recycled: a layer dropped from the pool can still be on screen in an engine, and is
+ * left to the garbage collector.
+ */
+class RenderResourcePool {
+    /**
+     * Static layers kept, for the sizes and tiers in use at the same time.
+     */
+    private static final int MAX_STATIC_LAYERS = 4;
+
+    private static RenderResourcePool sInstance;
+
+    private int mReferences;
+    private final Context mContext;
+    // Guarded by this, built on first use.
+    private final FacePalette[] mPalettes;
+    // Guarded by this.
+    private final Map<String, Bitmap> mStaticLayers =
+            new LinkedHashMap<String, Bitmap>(MAX_STATIC_LAYERS, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Bitmap> eldest) {
+                    return size() > MAX_STATIC_LAYERS;
+                }
+            };
+    private final Map<String, GlyphAtlas> mGlyphAtlases = new HashMap<>();
+    private int mStaticLayerHits;
+    private int mStaticLayerMisses;
+    // UI thread only.
+    private final Map<String, DateFormat> mDateFormats = new HashMap<>();
+
+    private RenderResourcePool(Context context) {
+        mContext = context;
+        mPalettes = new FacePalette[FacePalette.getThemeCount(context.getResources())];
+    }
+
+    /**
+     * Returns the pool of the process, created by the first engine.
+     */
+    static synchronized RenderResourcePool acquire(Context context) {
+        if (sInstance == null)
+            sInstance = new RenderResourcePool(context.getApplicationContext());
+        ++sInstance.mReferences;
+        return sInstance;
+    }
+
+    /**
+     * Gives the pool back. The caller must not draw with its assets any more.
+     */
+    void release() {
+        synchronized (RenderResourcePool.class) {
+            if (--mReferences > 0)
+                return;
+            sInstance = null;
+        }
+        synchronized (this) {
+            mStaticLayers.clear();
+            // no engine is left to draw with them
+            for (GlyphAtlas atlas : mGlyphAtlases.values())
+                atlas.release();
+            mGlyphAtlases.clear();
+        }
+        mDateFormats.clear();
+    }
+
+    /**
+     * Returns the palette of a theme, built on the first call: it may be the first call of
+     * a theme switch, so better not on the UI thread.
+     */
+    synchronized FacePalette getPalette(int theme) {
+        if (mPalettes[theme] == null)
+            mPalettes[theme] = new FacePalette(mContext, theme);
+        return mPalettes[theme];
+    }
+
+    /**
+     * Returns the static layer rendered by an engine for this size, tier and theme, or null.
+     * The layer must not be drawn into.
+     */
+    synchronized Bitmap getStaticLayer(int width, int height, int qualityTier, int theme) {
+        Bitmap layer = mStaticLayers.get(staticLayerKey(width, height, qualityTier, theme));
+        if (layer != null)
+            ++mStaticLayerHits;
+        else
+            ++mStaticLayerMisses;
+        return layer;
+    }
+
+    /**
+     * Offers a finished static layer to the other engines. From now on the caller must not
+     * draw into it either.
+     *
+     * @return the layer to use: {@code layer}, or the one another engine put first
+     */
+    synchronized Bitmap putStaticLayer(Bitmap layer, int qualityTier, int theme) {
+        String key = staticLayerKey(layer.getWidth(), layer.getHeight(), qualityTier, theme);
+        Bitmap shared = mStaticLayers.get(key);
+        if (shared != null)
+            return shared;
+        mStaticLayers.put(key, layer);
+        return layer;
+    }
+
+    private static String staticLayerKey(int width, int height, int qualityTier, int theme) {
+        return width + "x" + height + "_q" + qualityTier + "_t" + theme;
+    }
+
+    /**
+     * Returns the atlas of {@code glyphs} for a paint id in a theme. Atlases of the same
+     * paint id and theme are drawn with equal paints in every engine.
+     */
+    synchronized GlyphAtlas getGlyphAtlas(int paint, int theme, String glyphs) {
+        String key = paint + "/" + theme + "/" + glyphs;
+        GlyphAtlas atlas = mGlyphAtlases.get(key);
+        if (atlas == null) {
+            atlas = new GlyphAtlas(glyphs);
+            mGlyphAtlases.put(key, atlas);
+        }
+        return atlas;
+    }
+
+    /**
+     * Returns the formatter of {@code pattern} in {@code locale}, UI thread only. It is
+     * shared: callers set its time zone before using it.
+     */
+    DateFormat getDateFormat(String pattern, Locale locale) {
+        String key = locale.toLanguageTag() + "/" + pattern;
+        DateFormat format = mDateFormats.get(key);
+        if (format == null) {
+            format = new SimpleDateFormat(pattern, locale);
+            mDateFormats.put(key, format);
+        }
+        return format;
+    }
+
+    /**
+     * Returns the bytes of the shared bitmaps.
+     */
+    synchronized long getByteCount() {
+        long bytes = 0;
+        for (Bitmap layer : mStaticLayers.values())
+            bytes += layer.getAllocationByteCount();
+        for (GlyphAtlas atlas : mGlyphAtlases.values())
+            bytes += atlas.getByteCount();
+        return bytes;
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        int palettes = 0;
+        for (FacePalette palette : mPalettes) {
+            if (palette != null)
+                ++palettes;
+        }
+        writer.printf("RenderResourcePool: %d engines, %d KB shared, static layers %d "
+                        + "(hits %d, misses %d), glyph atlases %d, date formats %d, "
+                        + "palettes %d%n",
+                mReferences, getByteCount() / 1024, mStaticLayers.size(), mStaticLayerHits,
+                mStaticLayerMisses, mGlyphAtlases.size(), mDateFormats.size(), palettes);
+    }
+
+    /**
+     * Prints the pool of the process, if any engine holds it.
+     */
+    static synchronized void dumpInstance(PrintWriter writer) {
+        if (sInstance != null)
+            sInstance.dump(writer);
+    }
+}
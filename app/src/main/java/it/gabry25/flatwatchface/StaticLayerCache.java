@@ -0,0 +1,96 @@
+package it.gabry25.flatwatchface;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The interactive static layer (background and ring) of the last run, stored in the cache
+ * dir as raw pixels, so the first frame after a process start does not have to rasterize the
+ * vector background. A file is keyed by the surface size, the quality tier, the theme and the
+ * app version; the ambient face has no static layer, it only clears the screen.
+ * The methods do disk I/O and must not be called on the UI thread.
+ */
+class StaticLayerCache {
+    private static final String TAG = "StaticLayerCache";
+    private static final int HEADER_BYTES = 8;
+
+    private final File mDir;
+
+    StaticLayerCache(Context context) {
+        mDir = new File(context.getCacheDir(), "static_layer");
+    }
+
+    /**
+     * Returns the stored layer for the key, or null if there is none.
+     */
+    Bitmap read(int width, int height, int qualityTier, int theme) {
+        File file = file(width, height, qualityTier, theme);
+        if (!file.exists())
+            return null;
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            if (channel.size() != HEADER_BYTES + width * height * 4)
+                return null;
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0)
+                    return null;
+            }
+            buffer.flip();
+            if (buffer.getInt() != width || buffer.getInt() != height)
+                return null;
+            Bitmap layer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            layer.copyPixelsFromBuffer(buffer);
+            return layer;
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot read " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores {@code layer} under the key, replacing the layers stored for other keys.
+     */
+    void write(Bitmap layer, int qualityTier, int theme) {
+        if (!mDir.isDirectory() && !mDir.mkdirs())
+            return;
+        File file = file(layer.getWidth(), layer.getHeight(), qualityTier, theme);
+        File temp = new File(mDir, file.getName() + ".tmp");
+        ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_BYTES + layer.getByteCount());
+        buffer.putInt(layer.getWidth());
+        buffer.putInt(layer.getHeight());
+        layer.copyPixelsToBuffer(buffer);
+        buffer.flip();
+        try (FileChannel channel = new FileOutputStream(temp).getChannel()) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write " + file, e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return;
+        }
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File other : files) {
+                if (!other.equals(file))
+                    other.delete();
+            }
+        }
+    }
+
+    private File file(int width, int height, int qualityTier, int theme) {
+        return new File(mDir, width + "x" + height + "_q" + qualityTier + "_t" + theme + "_v"
+                + BuildConfig.VERSION_CODE);
+    }
+}
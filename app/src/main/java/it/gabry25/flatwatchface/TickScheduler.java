@@ -0,0 +1,103 @@
+package it.gabry25.flatwatchface;
+
+import android.os.Handler;
+
+/**
+ * Owns every time driven redraw of the watch face. While running (visible and interactive) it
+ * wakes up exactly on the wall clock minute boundary; the system time tick is still accepted,
+ * but a minute that was already delivered is never delivered twice, whichever source comes
+ * first. Clock jumps and time zone changes reset the alignment.
+ */
+class TickScheduler {
+    private static final long MINUTE_MS = 60 * 1000;
+
+    interface Callback {
+        /**
+         * Called once per wall clock minute with the reason that detected the new minute,
+         * {@link FrameScheduler#REASON_TIMER} or {@link FrameScheduler#REASON_TIME_TICK}.
+         */
+        void onMinuteChanged(int reason);
+    }
+
+    private final Handler mHandler;
+    private final int mMessage;
+    private final Callback mCallback;
+    private boolean mRunning;
+    private long mLastMinute = -1;
+    private int mWakeups;
+    private int mDroppedTicks;
+
+    /**
+     * @param handler handler that delivers {@code message} back to {@link #onAlarm()}
+     */
+    TickScheduler(Handler handler, int message, Callback callback) {
+        mHandler = handler;
+        mMessage = message;
+        mCallback = callback;
+    }
+
+    /**
+     * Starts or stops the minute aligned wakeups.
+     */
+    void setRunning(boolean running) {
+        mRunning = running;
+        mHandler.removeMessages(mMessage);
+        if (running)
+            scheduleNext(System.currentTimeMillis());
+    }
+
+    /**
+     * Handles the message sent by {@link #scheduleNext(long)}.
+     */
+    void onAlarm() {
+        ++mWakeups;
+        long now = System.currentTimeMillis();
+        deliver(now, FrameScheduler.REASON_TIMER);
+        if (mRunning)
+            scheduleNext(now);
+    }
+
+    /**
+     * Handles the system time tick, which keeps coming in ambient mode as well.
+     */
+    void onSystemTick() {
+        if (!deliver(System.currentTimeMillis(), FrameScheduler.REASON_TIME_TICK))
+            ++mDroppedTicks;
+    }
+
+    /**
+     * Handles a wall clock jump or a time zone change: the pending wakeup was computed for the
+     * old clock, and the minute shown may have changed even if the epoch minute did not.
+     */
+    void onClockChanged() {
+        mLastMinute = -1;
+        setRunning(mRunning);
+    }
+
+    /**
+     * Number of wakeups the scheduler itself performed.
+     */
+    int getWakeupCount() {
+        return mWakeups;
+    }
+
+    /**
+     * Number of system ticks ignored because their minute had already been delivered.
+     */
+    int getDroppedTickCount() {
+        return mDroppedTicks;
+    }
+
+    private boolean deliver(long now, int reason) {
+        long minute = now / MINUTE_MS;
+        if (minute == mLastMinute)
+            return false;
+        mLastMinute = minute;
+        mCallback.onMinuteChanged(reason);
+        return true;
+    }
+
+    private void scheduleNext(long now) {
+        mHandler.sendEmptyMessageDelayed(mMessage, MINUTE_MS - (now % MINUTE_MS));
+    }
+}
@@ -0,0 +1,53 @@
+package it.gabry25.flatwatchface;
+
+import android.graphics.Canvas;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Frames rendered ahead of time by {@link FramePipeline}. The framework classes are stubs
+ * that do nothing, so only what reaches the renderer is checked.
+ */
+public class FramePipelineTest {
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private static final char[] TEXT = "text".toCharArray();
+
+    @Test
+    public void preparedFramesFollowTheTimeZone() {
+        final List<Integer> minutesOfDay = new ArrayList<>();
+        FramePipeline pipeline = new FramePipeline(DIRECT_EXECUTOR, new FramePipeline.Renderer() {
+            @Override
+            public void renderFrame(Canvas canvas, Calendar calendar, long timeMs,
+                                    char[] time, char[] date, char[][] zoneLines) {
+                minutesOfDay.add(calendar.get(Calendar.HOUR_OF_DAY) * 60
+                        + calendar.get(Calendar.MINUTE));
+            }
+        });
+        pipeline.setSize(400, 400);
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.clear();
+        utc.set(2019, Calendar.MARCH, 14, 12, 0);
+        long time = utc.getTimeInMillis();
+        pipeline.prepare(time, TimeZone.getTimeZone("UTC"), 0, TEXT, TEXT, null);
+        // the engine clears the pipeline on a zone change, then prepares the next frame
+        pipeline.clear();
+        pipeline.prepare(time, TimeZone.getTimeZone("Asia/Kolkata"), 0, TEXT, TEXT, null);
+        assertEquals(2, minutesOfDay.size());
+        assertEquals(12 * 60, (int) minutesOfDay.get(0));
+        // 17:30
+        assertEquals(17 * 60 + 30, (int) minutesOfDay.get(1));
+    }
+}
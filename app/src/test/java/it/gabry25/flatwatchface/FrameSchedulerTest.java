@@ -0,0 +1,58 @@
+package it.gabry25.flatwatchface;
+
+import android.os.Handler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Which requests of {@link FrameScheduler} wait for the coalescing window. The handler is a
+ * stub that never runs what is posted to it, so a frame is only seen if it is dispatched at
+ * once.
+ */
+public class FrameSchedulerTest {
+    private static final long WINDOW_MS = 50;
+
+    private final List<Integer> mFrames = new ArrayList<>();
+    private boolean mAmbient;
+    private final FrameScheduler mScheduler = new FrameScheduler(new Handler(),
+            new FrameScheduler.Callback() {
+                @Override
+                public boolean isAmbient() {
+                    return mAmbient;
+                }
+
+                @Override
+                public void onFrameRequired(int reasons) {
+                    mFrames.add(reasons);
+                }
+            }, WINDOW_MS);
+
+    @Test
+    public void timeTicksDoNotWait() {
+        mScheduler.request(FrameScheduler.REASON_COMPLICATION);
+        assertTrue(mFrames.isEmpty());
+        // the pending request goes along with the tick
+        mScheduler.request(FrameScheduler.REASON_TIME_TICK);
+        assertEquals(1, mFrames.size());
+        assertEquals(FrameScheduler.REASON_TIME_TICK | FrameScheduler.REASON_COMPLICATION,
+                (int) mFrames.get(0));
+    }
+
+    @Test
+    public void ambientRequestsDoNotWait() {
+        mAmbient = true;
+        mScheduler.request(FrameScheduler.REASON_TIMER);
+        assertEquals(1, mFrames.size());
+        mScheduler.onFrameDrawn(System.currentTimeMillis(), true);
+        // nothing changed since
+        mScheduler.request(FrameScheduler.REASON_TIMER);
+        assertEquals(1, mFrames.size());
+        assertEquals(1, mScheduler.getSkippedFrameCount());
+    }
+}
@@ -0,0 +1,81 @@
+package it.gabry25.flatwatchface.core;
+
+import java.util.Calendar;
+import java.util.concurrent.Executor;
+
+/**
+ * Helpers shared by the benchmarks.
+ */
+final class Benchmarks {
+    /**
+     * Runs the work on the calling thread, so caches are ready as soon as they are asked.
+     */
+    static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    static final long MINUTE_MS = 60 * 1000;
+
+    /**
+     * The slots of the watch face: left, center and right.
+     */
+    static final SlotSpec[] FACE_SLOTS = SlotSpec.faceSlots();
+
+    /**
+     * The most slots a face can have: the face slots plus five inside the ring.
+     */
+    static final SlotSpec[] FULL_SLOTS = {
+            FACE_SLOTS[0],
+            FACE_SLOTS[1],
+            FACE_SLOTS[2],
+            SlotSpec.ring(1.5f, 1 / 6f),
+            SlotSpec.ring(4.5f, 1 / 6f),
+            SlotSpec.ring(6, 1 / 6f),
+            SlotSpec.ring(7.5f, 1 / 6f),
+            SlotSpec.ring(10.5f, 1 / 6f)
+    };
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Steps minute by minute through the ten hours after noon of today, so that the text
+     * cache never has to move to another day during a run.
+     */
+    static final class MinuteClock {
+        private final long mStart;
+        private long mTime;
+        private int mStep;
+
+        MinuteClock(Calendar calendar) {
+            calendar.set(Calendar.HOUR_OF_DAY, 12);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            mStart = calendar.getTimeInMillis();
+            mTime = mStart;
+        }
+
+        long next() {
+            if (++mStep == 600) {
+                mStep = 0;
+                mTime = mStart;
+            }
+            mTime += MINUTE_MS;
+            return mTime;
+        }
+    }
+
+    /**
+     * Parses a {@code WIDTHxHEIGHT} screen size.
+     */
+    static int[] parseSize(String size) {
+        int x = size.indexOf('x');
+        return new int[]{
+                Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1))
+        };
+    }
+}
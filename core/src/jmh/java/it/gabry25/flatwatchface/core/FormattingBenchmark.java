@@ -0,0 +1,74 @@
+package it.gabry25.flatwatchface.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and date text: formatting every frame, as the engine used to, against the lookup in
+ * the precomputed {@link TimeTextCache}, and the cost of building the table for a day.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormattingBenchmark {
+    @Param({"en_US", "it_IT", "ja_JP"})
+    public String locale;
+
+    @Param({"H:mm", "h:mm a"})
+    public String timePattern;
+
+    private static final String DATE_PATTERN = "EE, dd MMM";
+
+    private final Calendar mCalendar = Calendar.getInstance();
+    private DateFormat mTimeFormat;
+    private DateFormat mDateFormat;
+    private TimeTextCache mCache;
+    private Benchmarks.MinuteClock mClock;
+
+    @Setup
+    public void setUp() {
+        Locale l = Locale.forLanguageTag(locale.replace('_', '-'));
+        mTimeFormat = new SimpleDateFormat(timePattern, l);
+        mDateFormat = new SimpleDateFormat(DATE_PATTERN, l);
+        mCache = new TimeTextCache(Benchmarks.DIRECT_EXECUTOR);
+        mCache.setFormat(l, timePattern, DATE_PATTERN);
+        mClock = new Benchmarks.MinuteClock(mCalendar);
+        mCache.getTime(mCalendar);
+    }
+
+    @Benchmark
+    public int formatPerFrame() {
+        mCalendar.setTimeInMillis(mClock.next());
+        String time = mTimeFormat.format(mCalendar.getTime());
+        String date = mDateFormat.format(mCalendar.getTime());
+        return time.length() + date.length();
+    }
+
+    @Benchmark
+    public int cacheLookup() {
+        mCalendar.setTimeInMillis(mClock.next());
+        return mCache.getTime(mCalendar).length + mCache.getDate(mCalendar).length;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int buildDay() {
+        TimeTextCache cache = new TimeTextCache(Benchmarks.DIRECT_EXECUTOR);
+        cache.setFormat(Locale.forLanguageTag(locale.replace('_', '-')), timePattern,
+                DATE_PATTERN);
+        cache.getTime(mCalendar);
+        return cache.getTime(mCalendar).length;
+    }
+}
@@ -0,0 +1,48 @@
+package it.gabry25.flatwatchface.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The non drawing work of one interactive frame: calendar fields, text lookup and hand
+ * geometry. Run with the gc profiler (the default of the jmh task) to see the allocation
+ * rate per simulated frame, which should be zero.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameBenchmark {
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final FaceLayout mLayout = new FaceLayout(30f, 30, Benchmarks.FACE_SLOTS);
+    private TimeTextCache mCache;
+    private Benchmarks.MinuteClock mClock;
+
+    @Setup
+    public void setUp() {
+        mCache = new TimeTextCache(Benchmarks.DIRECT_EXECUTOR);
+        mCache.setFormat(Locale.US, "H:mm", "EE, dd MMM");
+        mClock = new Benchmarks.MinuteClock(mCalendar);
+        mCache.getTime(mCalendar);
+        mLayout.layout(454, 454);
+    }
+
+    @Benchmark
+    public float frame() {
+        mCalendar.setTimeInMillis(mClock.next());
+        char[] time = mCache.getTime(mCalendar);
+        char[] date = mCache.getDate(mCalendar);
+        int minute = mCalendar.get(Calendar.MINUTE);
+        float hourRotation = FaceGeometry.hourRotation(mCalendar.get(Calendar.HOUR), minute);
+        return time.length + date.length + mLayout.getCenterX()
+                + FaceGeometry.minuteArcStart(hourRotation) + FaceGeometry.minuteSweep(minute);
+    }
+}
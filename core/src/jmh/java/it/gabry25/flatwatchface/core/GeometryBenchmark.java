@@ -0,0 +1,29 @@
+package it.gabry25.flatwatchface.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rotation math of the hour tick and of the minute arc, for every minute of half a day.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GeometryBenchmark {
+    private int mMinuteOfHalfDay;
+
+    @Benchmark
+    public float handsAndArc() {
+        mMinuteOfHalfDay = (mMinuteOfHalfDay + 1) % (12 * 60);
+        int hour = mMinuteOfHalfDay / 60;
+        int minute = mMinuteOfHalfDay % 60;
+        float hourRotation = FaceGeometry.hourRotation(hour, minute);
+        return FaceGeometry.minuteArcStart(hourRotation) + FaceGeometry.minuteSweep(minute);
+    }
+}
@@ -0,0 +1,59 @@
+package it.gabry25.flatwatchface.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Layout of the face for the screen sizes we ship to. Square sizes stand for both round and
+ * square screens, the layout does not depend on the shape; 360x330 is the round screen with
+ * a flat bottom. The face uses 3 slots; 8 is the most a layout allows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LayoutBenchmark {
+    @Param({"280x280", "320x320", "360x330", "360x360", "390x390", "454x454", "480x480"})
+    public String size;
+    @Param({"3", "8"})
+    public int slots;
+
+    private int mWidth;
+    private int mHeight;
+    private FaceLayout mLayout;
+
+    @Setup
+    public void setUp() {
+        int[] s = Benchmarks.parseSize(size);
+        mWidth = s[0];
+        mHeight = s[1];
+        // dimensions of a 1.5 density screen
+        mLayout = new FaceLayout(30f, 30,
+                slots == 3 ? Benchmarks.FACE_SLOTS : Benchmarks.FULL_SLOTS);
+        mLayout.layout(mWidth, mHeight);
+    }
+
+    @Benchmark
+    public int layout() {
+        mLayout.layout(mWidth, mHeight);
+        return mLayout.getSlotRight(mLayout.getSlotCount() - 1);
+    }
+
+    /**
+     * A tap in the middle of the last slot, which should cost the same for any number of
+     * slots.
+     */
+    @Benchmark
+    public int findSlot() {
+        int last = mLayout.getSlotCount() - 1;
+        return mLayout.findSlot((mLayout.getSlotLeft(last) + mLayout.getSlotRight(last)) / 2,
+                (mLayout.getSlotTop(last) + mLayout.getSlotBottom(last)) / 2);
+    }
+}
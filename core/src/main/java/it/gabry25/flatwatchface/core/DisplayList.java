@@ -0,0 +1,246 @@
+package it.gabry25.flatwatchface.core;
+
+import java.util.Arrays;
+
+/**
+ * A frame recorded as data: every {@link DrawTarget} operation with its arguments, so it can
+ * be replayed later, any number of times, on any backend. The arguments are kept in
+ * primitive arrays that only grow, so recording a frame into a list that was used before
+ * does not allocate. Text arrays are kept by reference.
+ */
+public final class DisplayList implements DrawTarget {
+    private static final int OP_BEGIN_LAYER = 0;
+    private static final int OP_END_LAYER = 1;
+    private static final int OP_DRAW_LAYER = 2;
+    private static final int OP_DRAW_COLOR = 3;
+    private static final int OP_DRAW_BACKGROUND = 4;
+    private static final int OP_DRAW_COMPLICATION = 5;
+    private static final int OP_DRAW_TEXT = 6;
+    private static final int OP_DRAW_LINE = 7;
+    private static final int OP_DRAW_OVAL = 8;
+    private static final int OP_DRAW_ARC = 9;
+    private static final int OP_SAVE = 10;
+    private static final int OP_ROTATE = 11;
+    private static final int OP_RESTORE = 12;
+    private static final int OP_TRANSLATE = 13;
+
+    private int[] mOps = new int[32];
+    private int mOpCount;
+    // ids and colors
+    private int[] mInts = new int[32];
+    private int mIntCount;
+    // coordinates and angles
+    private float[] mFloats = new float[128];
+    private int mFloatCount;
+    private long[] mTimes = new long[8];
+    private int mTimeCount;
+    private char[][] mTexts = new char[4][];
+    private int mTextCount;
+
+    /**
+     * Empties the list, keeping its storage.
+     */
+    public void reset() {
+        mOpCount = 0;
+        mIntCount = 0;
+        mFloatCount = 0;
+        mTimeCount = 0;
+        Arrays.fill(mTexts, 0, mTextCount, null);
+        mTextCount = 0;
+    }
+
+    /**
+     * Returns the number of recorded operations.
+     */
+    public int size() {
+        return mOpCount;
+    }
+
+    /**
+     * Draws the recorded operations on {@code target}, in order.
+     */
+    public void replay(DrawTarget target) {
+        int ints = 0;
+        int floats = 0;
+        int times = 0;
+        int texts = 0;
+        for (int i = 0; i < mOpCount; ++i) {
+            switch (mOps[i]) {
+                case OP_BEGIN_LAYER:
+                    target.beginLayer(mInts[ints++]);
+                    break;
+                case OP_END_LAYER:
+                    target.endLayer();
+                    break;
+                case OP_DRAW_LAYER:
+                    target.drawLayer(mInts[ints++], mFloats[floats], mFloats[floats + 1]);
+                    floats += 2;
+                    break;
+                case OP_DRAW_COLOR:
+                    target.drawColor(mInts[ints++]);
+                    break;
+                case OP_DRAW_BACKGROUND:
+                    target.drawBackground();
+                    break;
+                case OP_DRAW_COMPLICATION:
+                    target.drawComplication(mInts[ints++], mTimes[times++]);
+                    break;
+                case OP_DRAW_TEXT:
+                    target.drawText(mTexts[texts++], mFloats[floats], mFloats[floats + 1],
+                            mInts[ints++]);
+                    floats += 2;
+                    break;
+                case OP_DRAW_LINE:
+                    target.drawLine(mFloats[floats], mFloats[floats + 1], mFloats[floats + 2],
+                            mFloats[floats + 3], mInts[ints++]);
+                    floats += 4;
+                    break;
+                case OP_DRAW_OVAL:
+                    target.drawOval(mFloats[floats], mFloats[floats + 1], mFloats[floats + 2],
+                            mFloats[floats + 3], mInts[ints++]);
+                    floats += 4;
+                    break;
+                case OP_DRAW_ARC:
+                    target.drawArc(mFloats[floats], mFloats[floats + 1], mFloats[floats + 2],
+                            mFloats[floats + 3], mFloats[floats + 4], mFloats[floats + 5],
+                            mInts[ints++]);
+                    floats += 6;
+                    break;
+                case OP_SAVE:
+                    target.save();
+                    break;
+                case OP_ROTATE:
+                    target.rotate(mFloats[floats], mFloats[floats + 1], mFloats[floats + 2]);
+                    floats += 3;
+                    break;
+                case OP_TRANSLATE:
+                    target.translate(mFloats[floats], mFloats[floats + 1]);
+                    floats += 2;
+                    break;
+                default:
+                    target.restore();
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public void beginLayer(int layer) {
+        op(OP_BEGIN_LAYER);
+        putInt(layer);
+    }
+
+    @Override
+    public void endLayer() {
+        op(OP_END_LAYER);
+    }
+
+    @Override
+    public void drawLayer(int layer, float left, float top) {
+        op(OP_DRAW_LAYER);
+        putInt(layer);
+        putFloats(left, top);
+    }
+
+    @Override
+    public void drawColor(int color) {
+        op(OP_DRAW_COLOR);
+        putInt(color);
+    }
+
+    @Override
+    public void drawBackground() {
+        op(OP_DRAW_BACKGROUND);
+    }
+
+    @Override
+    public void drawComplication(int slot, long timeMs) {
+        op(OP_DRAW_COMPLICATION);
+        putInt(slot);
+        if (mTimeCount == mTimes.length)
+            mTimes = Arrays.copyOf(mTimes, mTimeCount * 2);
+        mTimes[mTimeCount++] = timeMs;
+    }
+
+    @Override
+    public void drawText(char[] text, float x, float y, int paint) {
+        op(OP_DRAW_TEXT);
+        if (mTextCount == mTexts.length)
+            mTexts = Arrays.copyOf(mTexts, mTextCount * 2);
+        mTexts[mTextCount++] = text;
+        putFloats(x, y);
+        putInt(paint);
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        op(OP_DRAW_LINE);
+        putFloats(startX, startY);
+        putFloats(stopX, stopY);
+        putInt(paint);
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, int paint) {
+        op(OP_DRAW_OVAL);
+        putFloats(left, top);
+        putFloats(right, bottom);
+        putInt(paint);
+    }
+
+    @Override
+    public void drawArc(float left, float top, float right, float bottom,
+                        float startAngle, float sweepAngle, int paint) {
+        op(OP_DRAW_ARC);
+        putFloats(left, top);
+        putFloats(right, bottom);
+        putFloats(startAngle, sweepAngle);
+        putInt(paint);
+    }
+
+    @Override
+    public void save() {
+        op(OP_SAVE);
+    }
+
+    @Override
+    public void rotate(float degrees, float px, float py) {
+        op(OP_ROTATE);
+        putFloats(degrees, px);
+        putFloat(py);
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        op(OP_TRANSLATE);
+        putFloats(dx, dy);
+    }
+
+    @Override
+    public void restore() {
+        op(OP_RESTORE);
+    }
+
+    private void op(int op) {
+        if (mOpCount == mOps.length)
+            mOps = Arrays.copyOf(mOps, mOpCount * 2);
+        mOps[mOpCount++] = op;
+    }
+
+    private void putInt(int value) {
+        if (mIntCount == mInts.length)
+            mInts = Arrays.copyOf(mInts, mIntCount * 2);
+        mInts[mIntCount++] = value;
+    }
+
+    private void putFloats(float first, float second) {
+        putFloat(first);
+        putFloat(second);
+    }
+
+    private void putFloat(float value) {
+        if (mFloatCount == mFloats.length)
+            mFloats = Arrays.copyOf(mFloats, mFloatCount * 2);
+        mFloats[mFloatCount++] = value;
+    }
+}
@@ -0,0 +1,72 @@
+package it.gabry25.flatwatchface.core;
+
+/**
+ * The drawing operations the face is made of. On the watch they go to the canvas of the
+ * engine; on the JVM they can be recorded, counted or replayed on another backend.
+ * <p>
+ * Paints, layers, the background and the complications are referred to by id: the target
+ * owns the actual objects, so the renderer stays free of platform types.
+ */
+public interface DrawTarget {
+    int PAINT_HOUR_TICK = 0;
+    int PAINT_MINUTE_ARC = 1;
+    int PAINT_RING = 2;
+    int PAINT_TIME = 3;
+    int PAINT_DATE = 4;
+    int PAINT_AMBIENT_TIME = 5;
+    int PAINT_AMBIENT_DATE = 6;
+    int PAINT_HIGHLIGHT = 7;
+    int PAINT_SECONDS = 8;
+    int PAINT_COUNT = 9;
+
+    /**
+     * Background and minute ring, only depend on the surface size.
+     */
+    int LAYER_STATIC = 0;
+    /**
+     * The complications of the ambient face, over a transparent background.
+     */
+    int LAYER_AMBIENT = 1;
+    /**
+     * The last interactive frame, drawn again under the tap feedback.
+     */
+    int LAYER_FRAME = 2;
+    int LAYER_COUNT = 3;
+
+    /**
+     * Redirects the next operations into a surface sized layer, until {@link #endLayer()}.
+     * The layer keeps its content until it is drawn again.
+     */
+    void beginLayer(int layer);
+
+    void endLayer();
+
+    void drawLayer(int layer, float left, float top);
+
+    /**
+     * Fills the layer or frame with {@code color}, replacing its pixels: a transparent color
+     * clears it.
+     */
+    void drawColor(int color);
+
+    void drawBackground();
+
+    void drawComplication(int slot, long timeMs);
+
+    void drawText(char[] text, float x, float y, int paint);
+
+    void drawLine(float startX, float startY, float stopX, float stopY, int paint);
+
+    void drawOval(float left, float top, float right, float bottom, int paint);
+
+    void drawArc(float left, float top, float right, float bottom,
+                 float startAngle, float sweepAngle, int paint);
+
+    void save();
+
+    void rotate(float degrees, float px, float py);
+
+    void translate(float dx, float dy);
+
+    void restore();
+}
@@ -0,0 +1,35 @@
+package it.gabry25.flatwatchface.core;
+
+/**
+ * Rotation math of the analog part: the hour tick turns with the hour, and the minute arc
+ * starts at twelve o'clock and grows with the minutes.
+ */
+public final class FaceGeometry {
+    private FaceGeometry() {
+    }
+
+    /**
+     * Rotation of the hour tick in degrees, clockwise from twelve o'clock.
+     *
+     * @param hour   hour in the 0-11 range
+     * @param minute minute in the 0-59 range
+     */
+    public static float hourRotation(int hour, int minute) {
+        return hour * 30 + minute / 2f;
+    }
+
+    /**
+     * Sweep of the minute arc in degrees.
+     */
+    public static float minuteSweep(int minute) {
+        return minute * 6f;
+    }
+
+    /**
+     * Start angle of the minute arc on a canvas already rotated by {@code hourRotation}, so
+     * that it starts at twelve o'clock.
+     */
+    public static float minuteArcStart(float hourRotation) {
+        return -90 - hourRotation;
+    }
+}
@@ -0,0 +1,210 @@
+package it.gabry25.flatwatchface.core;
+
+/**
+ * Positions of the elements of the face for a surface size: center, minute ring and
+ * complication slots. Computed once per surface change into primitive fields, so the values
+ * can be read every frame without allocating.
+ * <p>
+ * The slots come from a table of {@link SlotSpec}; the index in the table is the slot id.
+ * Taps are resolved through a coarse grid over the surface, where each cell holds the set of
+ * slots that overlap it, so finding the slot under a tap does not depend on the number of
+ * slots.
+ * <p>
+ * Fractions of the surface are rounded down like integer division: a slot at 5/6 of a 454
+ * pixel width is at 378, not at 377 because 5/6f is a little less than 5/6.
+ */
+public final class FaceLayout {
+    public static final int MAX_SLOTS = 8;
+    /**
+     * Cells of the tap grid along each side.
+     */
+    private static final int GRID_SIZE = 16;
+    /**
+     * Added before rounding a fraction down, more than the float error of a simple ratio and
+     * less than any fractional part it can have.
+     */
+    private static final double FRACTION_BIAS = 1e-3;
+
+    private final float mRingOffset;
+    private final int mCenterYOffset;
+    private final SlotSpec[] mSlots;
+    private int mWidth;
+    private int mHeight;
+    private float mCenterX;
+    private float mCenterY;
+    // left, top, right, bottom of every slot
+    private final int[] mSlotBounds;
+    // bit mask of the slots overlapping every cell of the tap grid, row by row
+    private final int[] mGrid = new int[GRID_SIZE * GRID_SIZE];
+
+    /**
+     * @param ringOffset    distance of the minute ring from the surface edge
+     * @param centerYOffset vertical offset of the slots that ask for it, see
+     *                      {@link SlotSpec#box(float, float, float, boolean)}
+     * @param slots         the complication slots, at most {@link #MAX_SLOTS}
+     */
+    public FaceLayout(float ringOffset, int centerYOffset, SlotSpec[] slots) {
+        if (slots.length > MAX_SLOTS)
+            throw new IllegalArgumentException("too many slots: " + slots.length);
+        mRingOffset = ringOffset;
+        mCenterYOffset = centerYOffset;
+        mSlots = slots.clone();
+        mSlotBounds = new int[slots.length * 4];
+    }
+
+    public void layout(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mCenterX = width / 2f;
+        mCenterY = height / 2f;
+        float ringRadius = Math.min(width, height) / 2f - mRingOffset;
+        for (int slot = 0; slot < mSlots.length; ++slot) {
+            SlotSpec spec = mSlots[slot];
+            int size = fraction(spec.mSize, width);
+            int left;
+            int top;
+            int right;
+            if (spec.mKind == SlotSpec.KIND_RING) {
+                double angle = Math.toRadians(spec.mX);
+                float sin = (float) Math.sin(angle);
+                float cos = (float) Math.cos(angle);
+                float distance = ringDistance(Math.abs(sin) + Math.abs(cos), size / 2f,
+                        ringRadius - mRingOffset / 2);
+                left = Math.round(mCenterX + sin * distance - size / 2f);
+                top = Math.round(mCenterY - cos * distance - size / 2f);
+                right = left + size;
+            } else {
+                int x = fraction(spec.mX, width);
+                if (spec.mKind == SlotSpec.KIND_CENTERED_BOX) {
+                    left = x - size / 2;
+                    right = x + size / 2;
+                } else if (spec.mKind == SlotSpec.KIND_RIGHT_BOX) {
+                    left = x - size;
+                    right = x;
+                } else {
+                    left = x;
+                    right = x + size;
+                }
+                top = fraction(spec.mY, height) + (spec.mCenterOffset ? mCenterYOffset : 0);
+            }
+            setSlot(slot, left, top, right, top + size);
+        }
+        buildGrid();
+    }
+
+    private static int fraction(float fraction, int length) {
+        return (int) Math.floor(fraction * (double) length + FRACTION_BIAS);
+    }
+
+    /**
+     * Distance from the center of a square slot, such that its farthest corner touches a
+     * circle of {@code radius}: the root of d^2 + 2dh(|sin| + |cos|) + 2h^2 = radius^2.
+     *
+     * @param sinCos   |sin| + |cos| of the slot direction
+     * @param halfSize   half the side of the slot
+     */
+    private static float ringDistance(float sinCos, float halfSize, float radius) {
+        float b = halfSize * sinCos;
+        return (float) Math.sqrt(b * b - 2 * halfSize * halfSize + radius * radius) - b;
+    }
+
+    private void setSlot(int slot, int left, int top, int right, int bottom) {
+        mSlotBounds[slot * 4] = left;
+        mSlotBounds[slot * 4 + 1] = top;
+        mSlotBounds[slot * 4 + 2] = right;
+        mSlotBounds[slot * 4 + 3] = bottom;
+    }
+
+    private void buildGrid() {
+        for (int i = 0; i < mGrid.length; ++i)
+            mGrid[i] = 0;
+        if (mWidth <= 0 || mHeight <= 0)
+            return;
+        for (int slot = 0; slot < mSlots.length; ++slot) {
+            int firstColumn = cell(getSlotLeft(slot), mWidth);
+            int lastColumn = cell(getSlotRight(slot) - 1, mWidth);
+            int firstRow = cell(getSlotTop(slot), mHeight);
+            int lastRow = cell(getSlotBottom(slot) - 1, mHeight);
+            for (int row = firstRow; row <= lastRow; ++row)
+                for (int column = firstColumn; column <= lastColumn; ++column)
+                    mGrid[row * GRID_SIZE + column] |= 1 << slot;
+        }
+    }
+
+    private static int cell(int position, int length) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, position * GRID_SIZE / length));
+    }
+
+    /**
+     * Returns the slot containing the point, or -1.
+     */
+    public int findSlot(int x, int y) {
+        if (x < 0 || y < 0 || x >= mWidth || y >= mHeight)
+            return -1;
+        int slots = mGrid[cell(y, mHeight) * GRID_SIZE + cell(x, mWidth)];
+        while (slots != 0) {
+            int slot = Integer.numberOfTrailingZeros(slots);
+            if (x >= getSlotLeft(slot) && x < getSlotRight(slot)
+                    && y >= getSlotTop(slot) && y < getSlotBottom(slot))
+                return slot;
+            slots &= slots - 1;
+        }
+        return -1;
+    }
+
+    public int getSlotCount() {
+        return mSlots.length;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public float getCenterX() {
+        return mCenterX;
+    }
+
+    public float getCenterY() {
+        return mCenterY;
+    }
+
+    public float getRingOffset() {
+        return mRingOffset;
+    }
+
+    public float getRingLeft() {
+        return mRingOffset;
+    }
+
+    public float getRingTop() {
+        return mRingOffset;
+    }
+
+    public float getRingRight() {
+        return mWidth - mRingOffset;
+    }
+
+    public float getRingBottom() {
+        return mHeight - mRingOffset;
+    }
+
+    public int getSlotLeft(int slot) {
+        return mSlotBounds[slot * 4];
+    }
+
+    public int getSlotTop(int slot) {
+        return mSlotBounds[slot * 4 + 1];
+    }
+
+    public int getSlotRight(int slot) {
+        return mSlotBounds[slot * 4 + 2];
+    }
+
+    public int getSlotBottom(int slot) {
+        return mSlotBounds[slot * 4 + 3];
+    }
+}
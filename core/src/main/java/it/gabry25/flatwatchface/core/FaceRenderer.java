@@ -0,0 +1,274 @@
+package it.gabry25.flatwatchface.core;
+
+/**
+ * Draws the face as a sequence of {@link DrawTarget} operations. This is everything the
+ * engine does in onDraw, so the same code runs on the watch, in benchmarks and in tests.
+ * <p>
+ * An interactive frame is built from two layers: the static layer holds the background and
+ * the minute ring, which change only with the surface, and the frame layer holds the static
+ * layer with the hour tick, the minute arc, the text and the complications over it, which
+ * change once a minute. A redraw within the minute is a blit of the frame layer.
+ * <p>
+ * The renderer keeps track of which layers are up to date: the static layer is drawn again
+ * only after {@link #invalidateLayers()}, the frame layer only when the time, the date, the
+ * other time zones or the complication content changed, and the ambient layer, which holds
+ * only the complications, when their content changed. Not thread safe.
+ */
+public final class FaceRenderer {
+    private static final int BLACK = 0xff000000;
+    private static final int TRANSPARENT = 0;
+    private static final long MINUTE_MS = 60 * 1000;
+    /**
+     * Burn-in offsets cycled through, one per minute, in units of the shift step.
+     */
+    private static final int[][] BURN_IN_SHIFTS = {
+            {0, 0}, {1, 0}, {1, 1}, {0, 1}, {-1, 1}, {-1, 0}, {-1, -1}, {0, -1}, {1, -1}
+    };
+
+    private final FaceLayout mLayout;
+    private final float mTimeYOffset;
+    private final float mDateYOffset;
+    private final int mBurnInShiftStep;
+    private boolean mBurnInProtection;
+    private char[][] mZoneLines;
+    private float mZoneLineHeight;
+    private int mQualityTier = QualityGovernor.TIER_FULL;
+    private boolean mStaticLayerValid;
+    // Content of the ambient layer.
+    private boolean mAmbientLayerValid;
+    private int mAmbientVersion;
+    // Content of the frame layer.
+    private boolean mFrameLayerValid;
+    private char[] mFrameTime;
+    private char[] mFrameDate;
+    private char[][] mFrameZoneLines;
+    private int mFrameVersion;
+    private int mFrameHour;
+    private int mFrameMinute;
+
+    /**
+     * @param timeYOffset     distance of the time baseline above the center
+     * @param dateYOffset     distance of the date baseline above the center
+     * @param burnInShiftStep burn-in shift step in pixels
+     */
+    public FaceRenderer(FaceLayout layout, float timeYOffset, float dateYOffset,
+                        int burnInShiftStep) {
+        mLayout = layout;
+        mTimeYOffset = timeYOffset;
+        mDateYOffset = dateYOffset;
+        mBurnInShiftStep = burnInShiftStep;
+    }
+
+    public void setBurnInProtection(boolean burnInProtection) {
+        mBurnInProtection = burnInProtection;
+    }
+
+    /**
+     * Sets the lines of the other time zones, see {@link ZoneClock}, stacked above the date.
+     * The frame layer is composed again when the array changes, so a new array must be
+     * passed for new text and the same one otherwise.
+     *
+     * @param lines      the lines, from the nearest to the date up, or null for none
+     * @param lineHeight distance between the baselines of two lines
+     */
+    public void setZoneLines(char[][] lines, float lineHeight) {
+        mZoneLines = lines;
+        mZoneLineHeight = lineHeight;
+    }
+
+    /**
+     * Sets the {@link QualityGovernor} tier of the interactive face. The paints are up to
+     * the caller; the layers are drawn again.
+     */
+    public void setQualityTier(int tier) {
+        if (tier == mQualityTier)
+            return;
+        mQualityTier = tier;
+        invalidateLayers();
+    }
+
+    /**
+     * Marks the static layer as up to date, after the caller filled it with a copy saved
+     * earlier for the same surface size and quality tier.
+     */
+    public void onStaticLayerRestored() {
+        mStaticLayerValid = true;
+    }
+
+    public boolean isStaticLayerValid() {
+        return mStaticLayerValid;
+    }
+
+    /**
+     * Marks every layer as stale, after a surface size or a paint change.
+     */
+    public void invalidateLayers() {
+        mStaticLayerValid = false;
+        invalidateContentLayers();
+    }
+
+    /**
+     * Marks the ambient and frame layers as stale, for changes the renderer cannot see, like
+     * the ambient mode of the complications.
+     */
+    public void invalidateContentLayers() {
+        mAmbientLayerValid = false;
+        mFrameLayerValid = false;
+    }
+
+    /**
+     * Draws an interactive frame. The face is composed into the frame layer when it changed,
+     * then the layer is drawn with the tap feedback over it: a redraw for a press costs a blit
+     * and the highlight of the pressed slot.
+     *
+     * @param hour           hour in the 0-11 range
+     * @param minute         minute in the 0-59 range
+     * @param contentVersion version of the complication content
+     * @param pressedSlot    slot to highlight, or -1
+     * @return whether the frame layer was composed again
+     */
+    public boolean drawInteractive(DrawTarget target, long timeMs, int hour, int minute,
+                                char[] time, char[] date, int contentVersion, int pressedSlot) {
+        boolean compose = !mFrameLayerValid || time != mFrameTime || date != mFrameDate
+                || mZoneLines != mFrameZoneLines || contentVersion != mFrameVersion
+                || hour != mFrameHour || minute != mFrameMinute;
+        if (compose) {
+            // the static layer cannot be drawn while another layer is open
+            updateStaticLayer(target);
+            target.beginLayer(DrawTarget.LAYER_FRAME);
+            drawFace(target, timeMs, hour, minute, time, date, mZoneLines);
+            target.endLayer();
+            mFrameTime = time;
+            mFrameDate = date;
+            mFrameZoneLines = mZoneLines;
+            mFrameVersion = contentVersion;
+            mFrameHour = hour;
+            mFrameMinute = minute;
+            mFrameLayerValid = true;
+        }
+        target.drawLayer(DrawTarget.LAYER_FRAME, 0, 0);
+        if (pressedSlot >= 0)
+            target.drawOval(mLayout.getSlotLeft(pressedSlot), mLayout.getSlotTop(pressedSlot),
+                    mLayout.getSlotRight(pressedSlot), mLayout.getSlotBottom(pressedSlot),
+                    DrawTarget.PAINT_HIGHLIGHT);
+        return compose;
+    }
+
+    /**
+     * Draws the static layer if it is stale, and nothing else: used to prepare the layer of
+     * another theme ahead of time.
+     */
+    public void prepareStaticLayer(DrawTarget target) {
+        updateStaticLayer(target);
+    }
+
+    private void updateStaticLayer(DrawTarget target) {
+        if (mStaticLayerValid)
+            return;
+        target.beginLayer(DrawTarget.LAYER_STATIC);
+        target.drawColor(BLACK);
+        if (mQualityTier < QualityGovernor.TIER_FLAT_BACKGROUND)
+            target.drawBackground();
+        // the ring is a circle, so it does not depend on the hour rotation
+        target.drawOval(mLayout.getRingLeft(), mLayout.getRingTop(),
+                mLayout.getRingRight(), mLayout.getRingBottom(), DrawTarget.PAINT_RING);
+        target.endLayer();
+        mStaticLayerValid = true;
+    }
+
+    /**
+     * Draws the interactive face directly on the target, without going through the frame
+     * layer. Used for frames rendered ahead of time.
+     *
+     * @param hour      hour in the 0-11 range
+     * @param minute    minute in the 0-59 range
+     * @param zoneLines lines of the other time zones for that minute, or null, see
+     *                  {@link #setZoneLines(char[][], float)}
+     */
+    public void drawFace(DrawTarget target, long timeMs, int hour, int minute,
+                         char[] time, char[] date, char[][] zoneLines) {
+        // Draw the background.
+        updateStaticLayer(target);
+        target.drawLayer(DrawTarget.LAYER_STATIC, 0, 0);
+        // Draw complications
+        for (int slot = 0; slot < mLayout.getSlotCount(); ++slot)
+            target.drawComplication(slot, timeMs);
+        // Draw digital part
+        float centerX = mLayout.getCenterX();
+        float centerY = mLayout.getCenterY();
+        target.drawText(time, centerX, centerY - mTimeYOffset, DrawTarget.PAINT_TIME);
+        target.drawText(date, centerX, centerY - mDateYOffset, DrawTarget.PAINT_DATE);
+        drawZoneLines(target, zoneLines, DrawTarget.PAINT_DATE);
+        // Draw analog part
+        float hoursRotation = FaceGeometry.hourRotation(hour, minute);
+        // save the canvas state before we begin to rotate it
+        target.save();
+        target.rotate(hoursRotation, centerX, centerY);
+        target.drawLine(centerX, 0, centerX, mLayout.getRingOffset(),
+                DrawTarget.PAINT_HOUR_TICK);
+        if (mQualityTier < QualityGovernor.TIER_NO_MINUTE_ARC)
+            target.drawArc(mLayout.getRingLeft(), mLayout.getRingTop(),
+                    mLayout.getRingRight(), mLayout.getRingBottom(),
+                    FaceGeometry.minuteArcStart(hoursRotation),
+                    FaceGeometry.minuteSweep(minute), DrawTarget.PAINT_MINUTE_ARC);
+        // restore the canvas' original orientation.
+        target.restore();
+    }
+
+    private void drawZoneLines(DrawTarget target, char[][] lines, int paint) {
+        if (lines == null)
+            return;
+        float centerX = mLayout.getCenterX();
+        float baseline = mLayout.getCenterY() - mDateYOffset;
+        for (char[] line : lines) {
+            baseline -= mZoneLineHeight;
+            target.drawText(line, centerX, baseline, paint);
+        }
+    }
+
+    /**
+     * Draws the dot of {@code indicator} at its current position, over an interactive frame.
+     */
+    public void drawSeconds(DrawTarget target, SecondsIndicator indicator) {
+        target.drawOval(indicator.getDotLeft(), indicator.getDotTop(), indicator.getDotRight(),
+                indicator.getDotBottom(), DrawTarget.PAINT_SECONDS);
+    }
+
+    /**
+     * Draws an ambient frame: the time, the date and the complications. The complications,
+     * which change at most once a minute in ambient and usually less, are composed into the
+     * ambient layer only when their content changed; the text changes every minute and is
+     * drawn directly over the layer. With burn-in protection the whole frame is shifted every
+     * minute by a translation.
+     *
+     * @param contentVersion version of the complication content
+     */
+    public void drawAmbient(DrawTarget target, long timeMs, char[] time, char[] date,
+                            int contentVersion) {
+        int slotCount = mLayout.getSlotCount();
+        if (slotCount > 0 && (!mAmbientLayerValid || contentVersion != mAmbientVersion)) {
+            target.beginLayer(DrawTarget.LAYER_AMBIENT);
+            target.drawColor(TRANSPARENT);
+            for (int slot = 0; slot < slotCount; ++slot)
+                target.drawComplication(slot, timeMs);
+            target.endLayer();
+            mAmbientVersion = contentVersion;
+            mAmbientLayerValid = true;
+        }
+        target.drawColor(BLACK);
+        if (mBurnInProtection) {
+            int[] shift = BURN_IN_SHIFTS[(int) ((timeMs / MINUTE_MS) % BURN_IN_SHIFTS.length)];
+            target.save();
+            target.translate(shift[0] * mBurnInShiftStep, shift[1] * mBurnInShiftStep);
+        }
+        if (slotCount > 0)
+            target.drawLayer(DrawTarget.LAYER_AMBIENT, 0, 0);
+        float centerX = mLayout.getCenterX();
+        float centerY = mLayout.getCenterY();
+        target.drawText(time, centerX, centerY - mTimeYOffset, DrawTarget.PAINT_AMBIENT_TIME);
+        target.drawText(date, centerX, centerY - mDateYOffset, DrawTarget.PAINT_AMBIENT_DATE);
+        drawZoneLines(target, mZoneLines, DrawTarget.PAINT_AMBIENT_DATE);
+        if (mBurnInProtection)
+            target.restore();
+    }
+}
@@ -0,0 +1,192 @@
+package it.gabry25.flatwatchface.core;
+
+import java.util.Calendar;
+
+/**
+ * The work of the engine for every frame, around {@link FaceRenderer}: the text of the
+ * minute, from the {@link TimeTextCache} or formatted while it is being built, the lines of
+ * the other time zones, the frame prepared ahead of time, the seconds dot and the frames
+ * handed to the preview. It is the whole of onDraw but for the canvas, so the frame budgets
+ * hold for what the engine runs.
+ * <p>
+ * Whole frames are platform bitmaps, reached through a {@link Host}. UI thread only; the
+ * draw methods use the renderer, so they are called with its lock held if it is shared.
+ *
+ * @param <F> type of a whole frame
+ */
+public final class FrameComposer<F> {
+    private static final long MINUTE_MS = 60 * 1000;
+
+    /**
+     * The frames of the engine.
+     */
+    public interface Host<F> {
+        /**
+         * Returns the frame prepared ahead of time for the minute of {@code timeMs} with the
+         * given complication content, or null if there is none.
+         */
+        F takePreparedFrame(long timeMs, int contentVersion);
+
+        /**
+         * Draws a prepared frame as the whole frame.
+         */
+        void drawPreparedFrame(F frame);
+
+        /**
+         * Returns the frame layer of the renderer, see {@link DrawTarget#LAYER_FRAME}.
+         */
+        F getFrameLayer();
+
+        /**
+         * Hands a frame to the preview, once for every new frame shown.
+         */
+        void publishFrame(F frame);
+    }
+
+    private final FaceRenderer mRenderer;
+    private final TimeTextCache mTextCache;
+    private final Calendar mCalendar;
+    private final Host<F> mHost;
+    private ZoneClock mZoneClock;
+    private float mZoneLineHeight;
+    // minute since the epoch of the zone lines given to the renderer, -1 if none
+    private long mZoneLinesMinute = -1;
+    private F mShownFrame;
+
+    /**
+     * @param calendar calendar of the engine, in its time zone; set to the time of every frame
+     */
+    public FrameComposer(FaceRenderer renderer, TimeTextCache textCache, Calendar calendar,
+                         Host<F> host) {
+        mRenderer = renderer;
+        mTextCache = textCache;
+        mCalendar = calendar;
+        mHost = host;
+    }
+
+    /**
+     * Sets the time of the other zones shown above the date.
+     *
+     * @param clock      the zones, or null for none
+     * @param lineHeight distance between the baselines of two lines
+     */
+    public void setZoneClock(ZoneClock clock, float lineHeight) {
+        mZoneClock = clock;
+        mZoneLineHeight = lineHeight;
+        invalidateZoneLines();
+    }
+
+    /**
+     * Builds the zone lines again on the next frame, after a change of the text format or of
+     * the zone rules.
+     */
+    public void invalidateZoneLines() {
+        mZoneLinesMinute = -1;
+    }
+
+    /**
+     * Returns the last frame shown: the frame layer or a prepared frame, null if none.
+     */
+    public F getShownFrame() {
+        return mShownFrame;
+    }
+
+    /**
+     * Returns the lines of the other time zones at {@code timeMs}, or null if there are none.
+     * A new array every time, see {@link FaceRenderer#setZoneLines(char[][], float)}.
+     */
+    public char[][] getZoneLines(long timeMs) {
+        if (mZoneClock == null)
+            return null;
+        char[][] lines = new char[mZoneClock.getZoneCount()][];
+        for (int zone = 0; zone < lines.length; ++zone) {
+            char[] time = mTextCache.getOrFormatTimeOfDay(
+                    mZoneClock.getMinuteOfDay(zone, timeMs));
+            lines[zone] = mZoneClock.formatLine(zone, time);
+        }
+        return lines;
+    }
+
+    /**
+     * Draws an ambient frame.
+     *
+     * @param contentVersion version of the complication content
+     */
+    public void drawAmbient(DrawTarget target, long timeMs, int contentVersion) {
+        update(timeMs);
+        mRenderer.drawAmbient(target, timeMs, mTextCache.getOrFormatTime(mCalendar),
+                mTextCache.getOrFormatDate(mCalendar), contentVersion);
+    }
+
+    /**
+     * Draws an interactive frame: the prepared frame if there is one for this minute and no
+     * slot is pressed, the frame layer of the renderer otherwise, then the seconds dot.
+     *
+     * @param pressedSlot slot to highlight, or -1
+     * @param seconds     the seconds dot, or null
+     * @return whether the frame layer was composed again
+     */
+    public boolean drawInteractive(DrawTarget target, long timeMs, int contentVersion,
+                                   int pressedSlot, SecondsIndicator seconds) {
+        update(timeMs);
+        if (pressedSlot < 0) {
+            F frame = mHost.takePreparedFrame(timeMs, contentVersion);
+            if (frame != null) {
+                mHost.drawPreparedFrame(frame);
+                // the same frame is taken again for every redraw in its minute
+                if (frame != mShownFrame) {
+                    mShownFrame = frame;
+                    mHost.publishFrame(frame);
+                }
+                drawSeconds(target, timeMs, seconds);
+                return false;
+            }
+        }
+        return drawFrameLayer(target, timeMs, contentVersion, pressedSlot, seconds);
+    }
+
+    /**
+     * Like {@link #drawInteractive}, but always through the frame layer: for partial redraws,
+     * as the layer covers any dirty area.
+     */
+    public boolean drawLive(DrawTarget target, long timeMs, int contentVersion,
+                            int pressedSlot, SecondsIndicator seconds) {
+        update(timeMs);
+        return drawFrameLayer(target, timeMs, contentVersion, pressedSlot, seconds);
+    }
+
+    private boolean drawFrameLayer(DrawTarget target, long timeMs, int contentVersion,
+                                   int pressedSlot, SecondsIndicator seconds) {
+        boolean composed = mRenderer.drawInteractive(target, timeMs,
+                mCalendar.get(Calendar.HOUR), mCalendar.get(Calendar.MINUTE),
+                mTextCache.getOrFormatTime(mCalendar), mTextCache.getOrFormatDate(mCalendar),
+                contentVersion, pressedSlot);
+        if (composed) {
+            // the layer is reused, so every composition is a new frame
+            mShownFrame = mHost.getFrameLayer();
+            mHost.publishFrame(mShownFrame);
+        }
+        drawSeconds(target, timeMs, seconds);
+        return composed;
+    }
+
+    private void drawSeconds(DrawTarget target, long timeMs, SecondsIndicator seconds) {
+        if (seconds == null)
+            return;
+        seconds.moveTo(timeMs);
+        mRenderer.drawSeconds(target, seconds);
+    }
+
+    /**
+     * Moves the calendar to {@code timeMs}, and gives the renderer the zone lines of its
+     * minute. The array changes only with the minute or the format, so the frame layer is
+     * composed again only then.
+     */
+    private void update(long timeMs) {
+        mCalendar.setTimeInMillis(timeMs);
+        if (mZoneClock == null || timeMs / MINUTE_MS == mZoneLinesMinute)
+            return;
+        mZoneLinesMinute = timeMs / MINUTE_MS;
+        mRenderer.setZoneLines(getZoneLines(timeMs), mZoneLineHeight);
+    }
+}
@@ -0,0 +1,142 @@
+package it.gabry25.flatwatchface.core;
+
+/**
+ * Picks the rendering quality tier from the cost of the interactive frames and the battery
+ * state. Each tier drops one more expensive part of the face; the tier in use is the lowest
+ * quality asked for by either input.
+ * <p>
+ * Both inputs have hysteresis: the frame cost steps down after a short run of frames with
+ * the running average over budget, but steps back up only once the average has stayed under
+ * half the budget for minutes, and a battery tier is left only once the level is a margin
+ * above its threshold. The step up counts time rather than frames, as interactive frames can
+ * be a minute apart. Every step starts the average over from the budget. Not thread safe.
+ */
+public final class QualityGovernor {
+    public static final int TIER_FULL = 0;
+    /**
+     * The vector background is replaced by a flat color.
+     */
+    public static final int TIER_FLAT_BACKGROUND = 1;
+    /**
+     * The ring and the minute arc are drawn without anti-aliasing.
+     */
+    public static final int TIER_NO_ANTIALIAS = 2;
+    /**
+     * The minute arc is not drawn.
+     */
+    public static final int TIER_NO_MINUTE_ARC = 3;
+    public static final int TIER_COUNT = 4;
+
+    /**
+     * Frames over the budget needed to step down.
+     */
+    static final int STEP_DOWN_FRAMES = 8;
+    /**
+     * Time with the average under half the budget needed to step up again.
+     */
+    static final long STEP_UP_NS = 5 * 60 * 1000000000L;
+    /**
+     * Battery percentage above a threshold needed to leave its tier.
+     */
+    static final int BATTERY_MARGIN = 5;
+
+    private final long mFrameBudgetNs;
+    private final int mLowBatteryLevel;
+    private final int mCriticalBatteryLevel;
+    private long mAverageNs;
+    // consecutive frames with the average over the budget
+    private int mSlowFrames;
+    // time of the frame that brought the average under half the budget, -1 if it is not
+    private long mFastSinceNs = -1;
+    private int mCostTier = TIER_FULL;
+    private int mLevelTier = TIER_FULL;
+    private boolean mPowerSave;
+    private int mTier = TIER_FULL;
+
+    /**
+     * @param frameBudgetNs        average interactive frame cost above which quality drops
+     * @param lowBatteryLevel      battery percentage at which the background goes flat
+     * @param criticalBatteryLevel battery percentage at which the minute arc goes away
+     */
+    public QualityGovernor(long frameBudgetNs, int lowBatteryLevel, int criticalBatteryLevel) {
+        mFrameBudgetNs = frameBudgetNs;
+        mLowBatteryLevel = lowBatteryLevel;
+        mCriticalBatteryLevel = criticalBatteryLevel;
+    }
+
+    /**
+     * Records the duration of an interactive frame.
+     *
+     * @param timeNs monotonic time of the frame, e.g. elapsed realtime
+     * @return true if the tier changed
+     */
+    public boolean onFrame(long timeNs, long durationNs) {
+        // exponential moving average over about 8 frames
+        mAverageNs += (durationNs - mAverageNs) / 8;
+        mSlowFrames = mAverageNs > mFrameBudgetNs ? mSlowFrames + 1 : 0;
+        if (mAverageNs * 2 >= mFrameBudgetNs)
+            mFastSinceNs = -1;
+        else if (mFastSinceNs < 0)
+            mFastSinceNs = timeNs;
+        if (mSlowFrames >= STEP_DOWN_FRAMES && mCostTier < TIER_COUNT - 1)
+            step(1);
+        else if (mFastSinceNs >= 0 && timeNs - mFastSinceNs >= STEP_UP_NS
+                && mCostTier > TIER_FULL)
+            step(-1);
+        return updateTier();
+    }
+
+    private void step(int tiers) {
+        mCostTier += tiers;
+        // the frames so far were drawn at the previous tier
+        mAverageNs = mFrameBudgetNs;
+        mSlowFrames = 0;
+        mFastSinceNs = -1;
+    }
+
+    /**
+     * Records a change of the battery state.
+     *
+     * @param level     charge in percent
+     * @param charging  whether the watch is on its charger
+     * @param powerSave whether battery saver is on
+     * @return true if the tier changed
+     */
+    public boolean onBatteryChanged(int level, boolean charging, boolean powerSave) {
+        int tier = TIER_FULL;
+        if (!charging) {
+            if (level <= threshold(mLowBatteryLevel, TIER_FLAT_BACKGROUND))
+                tier = TIER_FLAT_BACKGROUND;
+            if (level <= threshold(mCriticalBatteryLevel, TIER_NO_MINUTE_ARC))
+                tier = TIER_NO_MINUTE_ARC;
+        }
+        mLevelTier = tier;
+        mPowerSave = powerSave;
+        return updateTier();
+    }
+
+    /**
+     * Returns the level at or below which {@code tier} applies, higher while it is in use.
+     */
+    private int threshold(int level, int tier) {
+        return mLevelTier >= tier ? level + BATTERY_MARGIN : level;
+    }
+
+    private boolean updateTier() {
+        int tier = Math.max(mCostTier, mLevelTier);
+        if (mPowerSave)
+            tier = Math.max(tier, TIER_NO_ANTIALIAS);
+        if (tier == mTier)
+            return false;
+        mTier = tier;
+        return true;
+    }
+
+    public int getTier() {
+        return mTier;
+    }
+
+    public long getAverageFrameNs() {
+        return mAverageNs;
+    }
+}
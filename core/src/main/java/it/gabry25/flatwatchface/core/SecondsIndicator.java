@@ -0,0 +1,166 @@
+package it.gabry25.flatwatchface.core;
+
+/**
+ * A dot going round the minute ring once a minute, moved {@code rate} times a second. It
+ * keeps the bounds of the dot on screen, so a frame only has to repaint the area of the old
+ * and the new dot, see {@link #getDirtyLeft()}.
+ * <p>
+ * Frames over the budget lower the rate: after a short run of them it halves, down to once
+ * a second, and it doubles back to the configured rate only after ten seconds of frames
+ * under half the budget. Not thread safe.
+ */
+public final class SecondsIndicator {
+    /**
+     * Frames over the budget needed to halve the rate.
+     */
+    static final int SLOW_FRAMES = 3;
+    /**
+     * Seconds of frames under half the budget needed to double the rate again.
+     */
+    static final int FAST_SECONDS = 10;
+    private static final int SECONDS_PER_MINUTE = 60;
+    // room for the anti-aliased edge of the dot
+    private static final int DIRTY_MARGIN = 1;
+
+    private final int mMaxRate;
+    private final long mFrameBudgetNs;
+    private final float mDotRadius;
+    private int mRate;
+    private int mSlowFrames;
+    private int mFastFrames;
+    private float mCenterX;
+    private float mCenterY;
+    private float mRadius;
+    // the step on screen and its rate, -1 if there is no dot on screen
+    private long mStep = -1;
+    private int mStepRate;
+    private float mDotX;
+    private float mDotY;
+    private int mDirtyLeft;
+    private int mDirtyTop;
+    private int mDirtyRight;
+    private int mDirtyBottom;
+
+    /**
+     * @param rate          moves per second, at most
+     * @param frameBudgetNs cost of a frame above which the rate drops
+     * @param dotRadius     radius of the dot, in pixels
+     */
+    public SecondsIndicator(int rate, long frameBudgetNs, float dotRadius) {
+        mMaxRate = Math.max(rate, 1);
+        mRate = mMaxRate;
+        mFrameBudgetNs = frameBudgetNs;
+        mDotRadius = dotRadius;
+    }
+
+    /**
+     * Puts the dot on the minute ring of {@code layout}, and forgets the dot on screen.
+     */
+    public void layout(FaceLayout layout) {
+        mCenterX = layout.getCenterX();
+        mCenterY = layout.getCenterY();
+        mRadius = (layout.getRingRight() - layout.getRingLeft()) / 2f;
+        reset();
+    }
+
+    /**
+     * Forgets the dot on screen, e.g. when the indicator starts on a frame without it.
+     */
+    public void reset() {
+        mStep = -1;
+    }
+
+    /**
+     * Moves the dot to its position at {@code timeMs}. The dirty area then covers the dot at
+     * its previous and its new position.
+     *
+     * @return false if the dot is already there
+     */
+    public boolean moveTo(long timeMs) {
+        long step = timeMs * mRate / 1000;
+        if (step == mStep && mRate == mStepRate)
+            return false;
+        int stepsPerMinute = SECONDS_PER_MINUTE * mRate;
+        double angle = Math.toRadians((step % stepsPerMinute) * 360.0 / stepsPerMinute);
+        float x = mCenterX + (float) (mRadius * Math.sin(angle));
+        float y = mCenterY - (float) (mRadius * Math.cos(angle));
+        float left = Math.min(x, mStep >= 0 ? mDotX : x) - mDotRadius;
+        float top = Math.min(y, mStep >= 0 ? mDotY : y) - mDotRadius;
+        float right = Math.max(x, mStep >= 0 ? mDotX : x) + mDotRadius;
+        float bottom = Math.max(y, mStep >= 0 ? mDotY : y) + mDotRadius;
+        mDirtyLeft = (int) Math.floor(left) - DIRTY_MARGIN;
+        mDirtyTop = (int) Math.floor(top) - DIRTY_MARGIN;
+        mDirtyRight = (int) Math.ceil(right) + DIRTY_MARGIN;
+        mDirtyBottom = (int) Math.ceil(bottom) + DIRTY_MARGIN;
+        mDotX = x;
+        mDotY = y;
+        mStep = step;
+        mStepRate = mRate;
+        return true;
+    }
+
+    /**
+     * Returns the delay from {@code timeMs} to the next move of the dot.
+     */
+    public long getDelayToNextMove(long timeMs) {
+        long next = timeMs * mRate / 1000 + 1;
+        // the first millisecond of the next step
+        return (next * 1000 + mRate - 1) / mRate - timeMs;
+    }
+
+    /**
+     * Records the duration of a frame drawn with the dot.
+     *
+     * @return true if the rate changed
+     */
+    public boolean onFrameDrawn(long durationNs) {
+        mSlowFrames = durationNs > mFrameBudgetNs ? mSlowFrames + 1 : 0;
+        mFastFrames = durationNs * 2 < mFrameBudgetNs ? mFastFrames + 1 : 0;
+        if (mSlowFrames >= SLOW_FRAMES && mRate > 1) {
+            mRate /= 2;
+        } else if (mFastFrames >= FAST_SECONDS * mRate && mRate < mMaxRate) {
+            mRate = Math.min(mRate * 2, mMaxRate);
+        } else {
+            return false;
+        }
+        mSlowFrames = 0;
+        mFastFrames = 0;
+        return true;
+    }
+
+    public int getRate() {
+        return mRate;
+    }
+
+    public float getDotLeft() {
+        return mDotX - mDotRadius;
+    }
+
+    public float getDotTop() {
+        return mDotY - mDotRadius;
+    }
+
+    public float getDotRight() {
+        return mDotX + mDotRadius;
+    }
+
+    public float getDotBottom() {
+        return mDotY + mDotRadius;
+    }
+
+    public int getDirtyLeft() {
+        return mDirtyLeft;
+    }
+
+    public int getDirtyTop() {
+        return mDirtyTop;
+    }
+
+    public int getDirtyRight() {
+        return mDirtyRight;
+    }
+
+    public int getDirtyBottom() {
+        return mDirtyBottom;
+    }
+}
@@ -0,0 +1,88 @@
+package it.gabry25.flatwatchface.core;
+
+/**
+ * Declares where a complication slot goes, independently of the surface size. A table of
+ * these is turned into bounds by {@link FaceLayout#layout(int, int)}.
+ */
+public final class SlotSpec {
+    static final int KIND_BOX = 0;
+    static final int KIND_RING = 1;
+    static final int KIND_CENTERED_BOX = 2;
+    static final int KIND_RIGHT_BOX = 3;
+
+    final int mKind;
+    final float mX;
+    final float mY;
+    final float mSize;
+    final boolean mCenterOffset;
+
+    private SlotSpec(int kind, float x, float y, float size, boolean centerOffset) {
+        mKind = kind;
+        mX = x;
+        mY = y;
+        mSize = size;
+        mCenterOffset = centerOffset;
+    }
+
+    /**
+     * A square slot at a fixed position.
+     *
+     * @param left         left edge, as a fraction of the width
+     * @param top          top edge, as a fraction of the height
+     * @param size         side, as a fraction of the width
+     * @param centerOffset whether the slot is moved down by the center offset of the layout
+     */
+    public static SlotSpec box(float left, float top, float size, boolean centerOffset) {
+        return new SlotSpec(KIND_BOX, left, top, size, centerOffset);
+    }
+
+    /**
+     * A square slot centered on a vertical line. Its side is even, a pixel less than
+     * {@code size} if that is odd, so that it is centered exactly.
+     *
+     * @param centerX      the line, as a fraction of the width
+     * @param top          top edge, as a fraction of the height
+     * @param size         side, as a fraction of the width
+     * @param centerOffset whether the slot is moved down by the center offset of the layout
+     */
+    public static SlotSpec centeredBox(float centerX, float top, float size,
+                                      boolean centerOffset) {
+        return new SlotSpec(KIND_CENTERED_BOX, centerX, top, size, centerOffset);
+    }
+
+    /**
+     * A square slot at a fixed position, placed by its right edge.
+     *
+     * @param right        right edge, as a fraction of the width
+     * @param top          top edge, as a fraction of the height
+     * @param size         side, as a fraction of the width
+     * @param centerOffset whether the slot is moved down by the center offset of the layout
+     */
+    public static SlotSpec rightBox(float right, float top, float size, boolean centerOffset) {
+        return new SlotSpec(KIND_RIGHT_BOX, right, top, size, centerOffset);
+    }
+
+    /**
+     * Returns the slots of the watch face: left, center below the date, and right, a fifth
+     * of the width each. The index of a slot is its complication id.
+     */
+    public static SlotSpec[] faceSlots() {
+        return new SlotSpec[]{
+                box(1 / 6f, 1 / 2f, 1 / 5f, false),
+                centeredBox(1 / 2f, 1 / 2f, 1 / 5f, true),
+                rightBox(5 / 6f, 1 / 2f, 1 / 5f, false)
+        };
+    }
+
+    /**
+     * A square slot inside the minute ring, at the position of {@code hour} on a dial.
+     *
+     * @param hour  position on the dial, 0 to 12, 0 being the top
+     * @param size  side, as a fraction of the width
+     */
+    public static SlotSpec ring(float hour, float size) {
+        if (hour < 0 || hour > 12)
+            throw new IllegalArgumentException("hour out of range: " + hour);
+        return new SlotSpec(KIND_RING, hour * 30, 0, size, false);
+    }
+}
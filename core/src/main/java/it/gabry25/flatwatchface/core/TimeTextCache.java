@@ -0,0 +1,238 @@
+package it.gabry25.flatwatchface.core;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+/**
+ * Pre-formatted time and date text for a whole day. The 1440 time strings and the date
+ * string are built on a background thread, so drawing a frame is just an index lookup
+ * with no {@link java.text.DateFormat} call and no allocation.
+ * <p>
+ * The table is keyed by the calendar fields of the day, not by instants: it is formatted in
+ * UTC, so daylight saving changes and time zone changes never make an entry wrong, they only
+ * move the engine calendar to another day, which triggers a rebuild. While a table is being
+ * built, the {@code getOrFormat} methods format the text on the spot.
+ */
+public class TimeTextCache {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    /**
+     * Immutable text table for one day and one formatting configuration.
+     */
+    private static final class Table {
+        final int dayKey;
+        final int generation;
+        final char[][] times;
+        final char[] date;
+
+        Table(int dayKey, int generation, char[][] times, char[] date) {
+            this.dayKey = dayKey;
+            this.generation = generation;
+            this.times = times;
+            this.date = date;
+        }
+    }
+
+    private final Executor mExecutor;
+    private volatile Table mTable;
+    // Written on the UI thread only.
+    private Locale mLocale;
+    private String mTimePattern;
+    private String mDatePattern;
+    private int mGeneration;
+    private int mRequestedDayKey = -1;
+    private int mRequestedGeneration = -1;
+    // Formatters of the text while no table is ready, created on first use.
+    private SimpleDateFormat mTimeFormat;
+    private SimpleDateFormat mDateFormat;
+
+    public TimeTextCache(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Sets the formatting configuration. The table is rebuilt only if something changed.
+     *
+     * @return true if the configuration changed
+     */
+    public boolean setFormat(Locale locale, String timePattern, String datePattern) {
+        if (locale.equals(mLocale) && timePattern.equals(mTimePattern)
+                && datePattern.equals(mDatePattern))
+            return false;
+        mLocale = locale;
+        mTimePattern = timePattern;
+        mDatePattern = datePattern;
+        mTimeFormat = null;
+        mDateFormat = null;
+        ++mGeneration;
+        return true;
+    }
+
+    /**
+     * Returns the time text for the minute of {@code calendar}, or null if the table for
+     * that day is not ready yet. In that case a rebuild is scheduled.
+     */
+    public char[] getTime(Calendar calendar) {
+        Table table = lookup(calendar);
+        if (table == null)
+            return null;
+        return table.times[calendar.get(Calendar.HOUR_OF_DAY) * 60
+                + calendar.get(Calendar.MINUTE)];
+    }
+
+    /**
+     * Returns the date text for the day of {@code calendar}, or null if the table for that
+     * day is not ready yet. In that case a rebuild is scheduled.
+     */
+    public char[] getDate(Calendar calendar) {
+        Table table = lookup(calendar);
+        return table == null ? null : table.date;
+    }
+
+    /**
+     * Like {@link #getTime(Calendar)}, but never schedules a rebuild: for lookups ahead of
+     * time, which must not replace the table of the current day with the next one.
+     */
+    public char[] peekTime(Calendar calendar) {
+        Table table = find(calendar);
+        if (table == null)
+            return null;
+        return table.times[calendar.get(Calendar.HOUR_OF_DAY) * 60
+                + calendar.get(Calendar.MINUTE)];
+    }
+
+    /**
+     * Like {@link #getDate(Calendar)}, but never schedules a rebuild.
+     */
+    public char[] peekDate(Calendar calendar) {
+        Table table = find(calendar);
+        return table == null ? null : table.date;
+    }
+
+    /**
+     * Returns the time text of a minute of the day in the current format, or null if no
+     * table is ready. The time text does not depend on the day, so any table will do: it
+     * serves the other time zones, see {@link ZoneClock}.
+     *
+     * @param minuteOfDay minutes since midnight, in the 0-1439 range
+     */
+    public char[] getTimeOfDay(int minuteOfDay) {
+        Table table = mTable;
+        if (table == null || table.generation != mGeneration)
+            return null;
+        return table.times[minuteOfDay];
+    }
+
+    /**
+     * Returns the time text for the minute of {@code calendar}, formatted on the spot if the
+     * table for that day is not ready yet.
+     */
+    public char[] getOrFormatTime(Calendar calendar) {
+        char[] time = getTime(calendar);
+        if (time != null)
+            return time;
+        if (mTimeFormat == null)
+            mTimeFormat = new SimpleDateFormat(mTimePattern, mLocale);
+        return format(mTimeFormat, calendar);
+    }
+
+    /**
+     * Returns the date text for the day of {@code calendar}, formatted on the spot if the
+     * table for that day is not ready yet.
+     */
+    public char[] getOrFormatDate(Calendar calendar) {
+        char[] date = getDate(calendar);
+        if (date != null)
+            return date;
+        if (mDateFormat == null)
+            mDateFormat = new SimpleDateFormat(mDatePattern, mLocale);
+        return format(mDateFormat, calendar);
+    }
+
+    /**
+     * Returns the time text of a minute of the day, formatted on the spot if no table is
+     * ready, see {@link #getTimeOfDay(int)}.
+     */
+    public char[] getOrFormatTimeOfDay(int minuteOfDay) {
+        char[] time = getTimeOfDay(minuteOfDay);
+        if (time != null)
+            return time;
+        if (mTimeFormat == null)
+            mTimeFormat = new SimpleDateFormat(mTimePattern, mLocale);
+        // formatted like the tables, in UTC
+        mTimeFormat.setTimeZone(UTC);
+        return mTimeFormat.format(new Date(minuteOfDay * MINUTE_MS)).toCharArray();
+    }
+
+    private static char[] format(SimpleDateFormat format, Calendar calendar) {
+        format.setTimeZone(calendar.getTimeZone());
+        return format.format(calendar.getTime()).toCharArray();
+    }
+
+    private Table lookup(Calendar calendar) {
+        Table table = find(calendar);
+        if (table == null)
+            requestBuild(calendar, dayKey(calendar));
+        return table;
+    }
+
+    private Table find(Calendar calendar) {
+        Table table = mTable;
+        if (table != null && table.dayKey == dayKey(calendar)
+                && table.generation == mGeneration)
+            return table;
+        return null;
+    }
+
+    private void requestBuild(Calendar calendar, int dayKey) {
+        if (mLocale == null
+                || (mRequestedDayKey == dayKey && mRequestedGeneration == mGeneration))
+            return;
+        mRequestedDayKey = dayKey;
+        mRequestedGeneration = mGeneration;
+        final int generation = mGeneration;
+        final int key = dayKey;
+        final int year = calendar.get(Calendar.YEAR);
+        final int month = calendar.get(Calendar.MONTH);
+        final int day = calendar.get(Calendar.DAY_OF_MONTH);
+        final Locale locale = mLocale;
+        final String timePattern = mTimePattern;
+        final String datePattern = mDatePattern;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mTable = build(key, generation, year, month, day,
+                        locale, timePattern, datePattern);
+            }
+        });
+    }
+
+    private static Table build(int dayKey, int generation, int year, int month, int day,
+                               Locale locale, String timePattern, String datePattern) {
+        SimpleDateFormat timeFormat = new SimpleDateFormat(timePattern, locale);
+        SimpleDateFormat dateFormat = new SimpleDateFormat(datePattern, locale);
+        timeFormat.setTimeZone(UTC);
+        dateFormat.setTimeZone(UTC);
+        Calendar calendar = Calendar.getInstance(UTC, locale);
+        calendar.clear();
+        calendar.set(year, month, day, 0, 0, 0);
+        char[] date = dateFormat.format(calendar.getTime()).toCharArray();
+        char[][] times = new char[MINUTES_PER_DAY][];
+        for (int i = 0; i < MINUTES_PER_DAY; ++i) {
+            // Every day in UTC has exactly 1440 minutes, so no field is ever skipped.
+            times[i] = timeFormat.format(calendar.getTime()).toCharArray();
+            calendar.add(Calendar.MINUTE, 1);
+        }
+        return new Table(dayKey, generation, times, date);
+    }
+
+    private static int dayKey(Calendar calendar) {
+        return calendar.get(Calendar.YEAR) * 1000 + calendar.get(Calendar.DAY_OF_YEAR);
+    }
+}
@@ -0,0 +1,121 @@
+package it.gabry25.flatwatchface.core;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+
+/**
+ * Local time in a few other time zones. The offset of each zone is looked up once and kept
+ * until its next transition, so the time of a zone is an addition and a division: the rules
+ * are only read again at a DST change or after {@link #reset()}.
+ * <p>
+ * The text of a zone is its label followed by the time, e.g. "Tokyo 10:10"; the time comes
+ * from the same {@link TimeTextCache} as the main time. Not thread safe.
+ */
+public final class ZoneClock {
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final String[] mZoneIds;
+    private final char[][] mLabels;
+    private final ZoneRules[] mRules;
+    // the offset of each zone and the range of time it holds for
+    private final long[] mOffsetMs;
+    private final long[] mValidFromMs;
+    private final long[] mValidUntilMs;
+    private int mRefreshCount;
+
+    /**
+     * @param zoneIds time zone ids, e.g. "Asia/Tokyo"
+     * @param labels  label of each zone, or null to use the city of its id
+     * @throws java.time.DateTimeException if an id is not a known zone
+     */
+    public ZoneClock(String[] zoneIds, String[] labels) {
+        int count = zoneIds.length;
+        mZoneIds = zoneIds.clone();
+        mLabels = new char[count][];
+        mRules = new ZoneRules[count];
+        mOffsetMs = new long[count];
+        mValidFromMs = new long[count];
+        mValidUntilMs = new long[count];
+        for (int i = 0; i < count; ++i) {
+            String label = labels != null && i < labels.length ? labels[i] : null;
+            mLabels[i] = (label != null ? label : cityOf(zoneIds[i])).toCharArray();
+        }
+        reset();
+    }
+
+    /**
+     * Returns the city of a zone id: "America/New_York" gives "New York".
+     */
+    static String cityOf(String zoneId) {
+        return zoneId.substring(zoneId.lastIndexOf('/') + 1).replace('_', ' ');
+    }
+
+    public int getZoneCount() {
+        return mZoneIds.length;
+    }
+
+    /**
+     * Reads the rules of every zone again, e.g. after the time zone data or the clock
+     * changed.
+     */
+    public void reset() {
+        for (int i = 0; i < mZoneIds.length; ++i) {
+            mRules[i] = ZoneId.of(mZoneIds[i]).getRules();
+            // empty range, so the next lookup refreshes
+            mValidFromMs[i] = Long.MAX_VALUE;
+            mValidUntilMs[i] = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Returns the offset from UTC of a zone at {@code timeMs}.
+     */
+    public long getOffsetMs(int zone, long timeMs) {
+        if (timeMs < mValidFromMs[zone] || timeMs >= mValidUntilMs[zone])
+            refresh(zone, timeMs);
+        return mOffsetMs[zone];
+    }
+
+    /**
+     * Returns the minutes since local midnight in a zone at {@code timeMs}, in the 0-1439
+     * range.
+     */
+    public int getMinuteOfDay(int zone, long timeMs) {
+        long minutes = Math.floorDiv(timeMs + getOffsetMs(zone, timeMs), MINUTE_MS);
+        return (int) Math.floorMod(minutes, (long) MINUTES_PER_DAY);
+    }
+
+    private void refresh(int zone, long timeMs) {
+        ++mRefreshCount;
+        ZoneRules rules = mRules[zone];
+        Instant instant = Instant.ofEpochMilli(timeMs);
+        mOffsetMs[zone] = rules.getOffset(instant).getTotalSeconds() * 1000L;
+        // a transition exactly at timeMs is the start of the range
+        ZoneOffsetTransition previous = rules.previousTransition(instant.plusNanos(1));
+        ZoneOffsetTransition next = rules.nextTransition(instant);
+        mValidFromMs[zone] = previous != null ? previous.toEpochSecond() * 1000 : Long.MIN_VALUE;
+        mValidUntilMs[zone] = next != null ? next.toEpochSecond() * 1000 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns how many times the rules were read, for tests.
+     */
+    int getRefreshCount() {
+        return mRefreshCount;
+    }
+
+    /**
+     * Returns the text of a zone: its label, a space and {@code time}.
+     */
+    public char[] formatLine(int zone, char[] time) {
+        char[] label = mLabels[zone];
+        char[] line = new char[label.length + 1 + time.length];
+        System.arraycopy(label, 0, line, 0, label.length);
+        line[label.length] = ' ';
+        System.arraycopy(time, 0, line, label.length + 1, time.length);
+        return line;
+    }
+}
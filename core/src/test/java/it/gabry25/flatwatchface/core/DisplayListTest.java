@@ -0,0 +1,153 @@
+package it.gabry25.flatwatchface.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Frames replayed from a display list must be the same, argument for argument, as frames
+ * drawn directly.
+ */
+public class DisplayListTest {
+    private static final char[] TIME = "10:10".toCharArray();
+    private static final char[] DATE = "Thu, 14 Mar".toCharArray();
+
+    @Test
+    public void replayMatchesDirectDrawing() {
+        LogDrawTarget direct = new LogDrawTarget();
+        drawFrames(newRenderer(), direct);
+        DisplayList list = new DisplayList();
+        drawFrames(newRenderer(), list);
+        LogDrawTarget replayed = new LogDrawTarget();
+        list.replay(replayed);
+        assertTrue(list.size() > 0);
+        assertEquals(direct.toString(), replayed.toString());
+    }
+
+    @Test
+    public void resetKeepsNothing() {
+        DisplayList list = new DisplayList();
+        drawFrames(newRenderer(), list);
+        list.reset();
+        assertEquals(0, list.size());
+        RecordingDrawTarget target = new RecordingDrawTarget();
+        list.replay(target);
+        assertEquals(0, target.getTotalCount());
+        // recorded again after a reset
+        newRenderer().drawInteractive(list, 0, 10, 10, TIME, DATE, 0, 1);
+        list.replay(target);
+        assertTrue(target.isBalanced());
+        assertEquals(1, target.getCount(RecordingDrawTarget.OP_DRAW_ARC));
+    }
+
+    private static FaceRenderer newRenderer() {
+        FaceLayout layout = new FaceLayout(30f, 30, new SlotSpec[] {
+                SlotSpec.box(1 / 6f, 1 / 2f, 1 / 5f, false),
+                SlotSpec.ring(3, 1 / 6f)
+        });
+        layout.layout(400, 400);
+        FaceRenderer renderer = new FaceRenderer(layout, 10f, 80f, 4);
+        renderer.setBurnInProtection(true);
+        return renderer;
+    }
+
+    /**
+     * A pressed interactive frame, a plain one, and a shifted ambient one.
+     */
+    private static void drawFrames(FaceRenderer renderer, DrawTarget target) {
+        renderer.drawInteractive(target, 0, 10, 10, TIME, DATE, 0, 1);
+        renderer.drawInteractive(target, 60000, 10, 11, TIME, DATE, 0, -1);
+        renderer.drawAmbient(target, 120000, TIME, DATE, 0);
+    }
+
+    /**
+     * Writes every operation and its arguments.
+     */
+    private static final class LogDrawTarget implements DrawTarget {
+        private final StringBuilder mLog = new StringBuilder();
+
+        @Override
+        public String toString() {
+            return mLog.toString();
+        }
+
+        private void log(String op, Object... args) {
+            mLog.append(op);
+            for (Object arg : args)
+                mLog.append(' ').append(arg);
+            mLog.append('\n');
+        }
+
+        @Override
+        public void beginLayer(int layer) {
+            log("beginLayer", layer);
+        }
+
+        @Override
+        public void endLayer() {
+            log("endLayer");
+        }
+
+        @Override
+        public void drawLayer(int layer, float left, float top) {
+            log("drawLayer", layer, left, top);
+        }
+
+        @Override
+        public void drawColor(int color) {
+            log("drawColor", color);
+        }
+
+        @Override
+        public void drawBackground() {
+            log("drawBackground");
+        }
+
+        @Override
+        public void drawComplication(int slot, long timeMs) {
+            log("drawComplication", slot, timeMs);
+        }
+
+        @Override
+        public void drawText(char[] text, float x, float y, int paint) {
+            log("drawText", new String(text), x, y, paint);
+        }
+
+        @Override
+        public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+            log("drawLine", startX, startY, stopX, stopY, paint);
+        }
+
+        @Override
+        public void drawOval(float left, float top, float right, float bottom, int paint) {
+            log("drawOval", left, top, right, bottom, paint);
+        }
+
+        @Override
+        public void drawArc(float left, float top, float right, float bottom,
+                            float startAngle, float sweepAngle, int paint) {
+            log("drawArc", left, top, right, bottom, startAngle, sweepAngle, paint);
+        }
+
+        @Override
+        public void save() {
+            log("save");
+        }
+
+        @Override
+        public void rotate(float degrees, float px, float py) {
+            log("rotate", degrees, px, py);
+        }
+
+        @Override
+        public void translate(float dx, float dy) {
+            log("translate", dx, dy);
+        }
+
+        @Override
+        public void restore() {
+            log("restore");
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package it.gabry25.flatwatchface.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Slot bounds computed from the slot table, and taps resolved through the grid, which must
+ * agree with a plain search of the bounds.
+ */
+public class FaceLayoutTest {
+    private static final SlotSpec[] FACE_SLOTS = SlotSpec.faceSlots();
+    private static final SlotSpec[] SLOTS = {
+            FACE_SLOTS[0],
+            FACE_SLOTS[1],
+            FACE_SLOTS[2],
+            SlotSpec.ring(0, 1 / 6f),
+            SlotSpec.ring(1.5f, 1 / 6f),
+            SlotSpec.ring(4.5f, 1 / 6f),
+            SlotSpec.ring(7.5f, 1 / 6f),
+            SlotSpec.ring(10.5f, 1 / 6f)
+    };
+    private static final int[][] SIZES = {
+            {280, 280}, {320, 320}, {360, 330}, {454, 454}, {480, 480}
+    };
+
+    @Test
+    public void boxSlotsMatchTheFace() {
+        FaceLayout layout = new FaceLayout(30f, 30, SLOTS);
+        layout.layout(450, 450);
+        assertBounds(layout, 0, 75, 225, 165, 315);
+        assertBounds(layout, 1, 180, 255, 270, 345);
+        assertBounds(layout, 2, 285, 225, 375, 315);
+        for (int[] size : SIZES)
+            assertFaceBounds(layout, size[0], size[1]);
+        for (int width = 200; width <= 500; ++width)
+            assertFaceBounds(layout, width, width);
+        // the center slot is centered
+        layout.layout(454, 454);
+        assertEquals(454, layout.getSlotLeft(1) + layout.getSlotRight(1));
+    }
+
+    /**
+     * Checks the face slots against the integer math the engine used to place them with.
+     */
+    private static void assertFaceBounds(FaceLayout layout, int width, int height) {
+        layout.layout(width, height);
+        int size = width / 5;
+        assertBounds(layout, 0, width / 6, height / 2, width / 6 + size, height / 2 + size);
+        assertBounds(layout, 1, width / 2 - size / 2, height / 2 + 30, width / 2 + size / 2,
+                height / 2 + 30 + size);
+        assertBounds(layout, 2, 5 * width / 6 - size, height / 2, 5 * width / 6,
+                height / 2 + size);
+    }
+
+    @Test
+    public void ringSlotsStayInsideTheRing() {
+        FaceLayout layout = new FaceLayout(30f, 30, SLOTS);
+        for (int[] size : SIZES) {
+            layout.layout(size[0], size[1]);
+            float radius = Math.min(size[0], size[1]) / 2f - layout.getRingOffset();
+            for (int slot = 3; slot < SLOTS.length; ++slot) {
+                // the farthest corner of the slot from the center
+                float dx = Math.max(Math.abs(layout.getSlotLeft(slot) - layout.getCenterX()),
+                        Math.abs(layout.getSlotRight(slot) - layout.getCenterX()));
+                float dy = Math.max(Math.abs(layout.getSlotTop(slot) - layout.getCenterY()),
+                        Math.abs(layout.getSlotBottom(slot) - layout.getCenterY()));
+                assertTrue("slot " + slot + " crosses the ring at " + size[0] + "x" + size[1],
+                        Math.hypot(dx, dy) <= radius);
+            }
+        }
+        // the slot at 0 is centered at the top
+        layout.layout(400, 400);
+        assertEquals(400, layout.getSlotLeft(3) + layout.getSlotRight(3));
+    }
+
+    @Test
+    public void findSlotMatchesBounds() {
+        FaceLayout layout = new FaceLayout(30f, 30, SLOTS);
+        for (int[] size : SIZES) {
+            layout.layout(size[0], size[1]);
+            for (int y = -2; y < size[1] + 2; ++y)
+                for (int x = -2; x < size[0] + 2; ++x)
+                    assertEquals("tap at " + x + "," + y, linearFind(layout, x, y),
+                            layout.findSlot(x, y));
+        }
+    }
+
+    @Test
+    public void findSlotBeforeLayout() {
+        FaceLayout layout = new FaceLayout(30f, 30, SLOTS);
+        assertEquals(-1, layout.findSlot(10, 10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTooManySlots() {
+        new FaceLayout(30f, 30, new SlotSpec[FaceLayout.MAX_SLOTS + 1]);
+    }
+
+    private static int linearFind(FaceLayout layout, int x, int y) {
+        for (int slot = 0; slot < layout.getSlotCount(); ++slot)
+            if (x >= layout.getSlotLeft(slot) && x < layout.getSlotRight(slot)
+                    && y >= layout.getSlotTop(slot) && y < layout.getSlotBottom(slot))
+                return slot;
+        return -1;
+    }
+
+    private static void assertBounds(FaceLayout layout, int slot, int left, int top,
+                                     int right, int bottom) {
+        String at = "slot " + slot + " at " + layout.getWidth() + "x" + layout.getHeight();
+        assertEquals(at, left, layout.getSlotLeft(slot));
+        assertEquals(at, top, layout.getSlotTop(slot));
+        assertEquals(at, right, layout.getSlotRight(slot));
+        assertEquals(at, bottom, layout.getSlotBottom(slot));
+    }
+}
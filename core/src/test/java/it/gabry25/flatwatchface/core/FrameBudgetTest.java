@@ -0,0 +1,459 @@
+package it.gabry25.flatwatchface.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Draw operation and allocation budgets of the frames drawn by {@link FrameComposer}, which is
+ * what the engine runs in onDraw: the renderer, the text lookup, the zone lines, the prepared
+ * frames, the seconds dot and the frames handed to the preview. Whole frames are stand-in
+ * objects. A change that adds work to a steady frame, or makes it allocate, fails the build.
+ */
+public class FrameBudgetTest {
+    /**
+     * Interactive frame of a new minute: static layer blit, complications, time, date and
+     * the hands composed into the frame layer, and the frame layer blit.
+     */
+    private static final int INTERACTIVE_OPS = 14;
+    /**
+     * Interactive frame that also renders the static layer.
+     */
+    private static final int INTERACTIVE_FIRST_OPS = 19;
+    /**
+     * Interactive frame whose content did not change, with the tap feedback: a blit and the
+     * highlight.
+     */
+    private static final int PRESSED_OPS = 2;
+    /**
+     * Ambient frame of a new minute: a clear, the complication layer blit, time and date.
+     */
+    private static final int AMBIENT_OPS = 4;
+    /**
+     * Ambient frame that also composes the complications into the ambient layer, on new
+     * content.
+     */
+    private static final int AMBIENT_COMPOSE_OPS = 10;
+    /**
+     * Ambient frame shifted for burn-in protection: a translation between a save and a
+     * restore.
+     */
+    private static final int AMBIENT_SHIFTED_OPS = AMBIENT_OPS + 3;
+    /**
+     * Bytes allocated for the lines of two zones, once a minute.
+     */
+    private static final long ZONE_LINES_BYTES = 256;
+    private static final int FRAMES = 600;
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private static final String[] ZONES = {"Asia/Tokyo", "America/New_York"};
+    private static final String[] ZONE_LABELS = {"Tokyo", "New York"};
+    private static final Object FRAME_LAYER = new Object();
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final RecordingDrawTarget mTarget = new RecordingDrawTarget();
+    private final Calendar mCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+    private FaceRenderer mRenderer;
+    private TimeTextCache mTextCache;
+    private SecondsIndicator mSeconds;
+    private FrameComposer<Object> mComposer;
+    private Object mPreparedFrame;
+    private int mPreparedFrameDraws;
+    // counted rather than kept, so that publishing does not allocate
+    private int mPublishCount;
+    private long mStartMs;
+
+    @Before
+    public void setUp() {
+        FaceLayout layout = new FaceLayout(30f, 30, SlotSpec.faceSlots());
+        layout.layout(454, 454);
+        mRenderer = new FaceRenderer(layout, 40f, 90f, 2);
+        mSeconds = new SecondsIndicator(4, 1000000, 3f);
+        mSeconds.layout(layout);
+        mCalendar.clear();
+        mCalendar.set(2019, Calendar.MARCH, 14, 8, 0);
+        mStartMs = mCalendar.getTimeInMillis();
+        setTextCache(DIRECT_EXECUTOR);
+        // builds the text of the day
+        mTextCache.getTime(mCalendar);
+        mTextCache.getDate(mCalendar);
+    }
+
+    private void setTextCache(Executor executor) {
+        mTextCache = new TimeTextCache(executor);
+        mTextCache.setFormat(Locale.US, "H:mm", "EE, dd MMM");
+        mComposer = new FrameComposer<>(mRenderer, mTextCache, mCalendar,
+                new FrameComposer.Host<Object>() {
+                    @Override
+                    public Object takePreparedFrame(long timeMs, int contentVersion) {
+                        return mPreparedFrame;
+                    }
+
+                    @Override
+                    public void drawPreparedFrame(Object frame) {
+                        ++mPreparedFrameDraws;
+                    }
+
+                    @Override
+                    public Object getFrameLayer() {
+                        return FRAME_LAYER;
+                    }
+
+                    @Override
+                    public void publishFrame(Object frame) {
+                        ++mPublishCount;
+                    }
+                });
+    }
+
+    @Test
+    public void firstInteractiveFrameRendersStaticLayer() {
+        drawInteractive(mStartMs);
+        assertBudget("first interactive frame", INTERACTIVE_FIRST_OPS);
+        assertEquals(1, mTarget.getCount(RecordingDrawTarget.OP_DRAW_BACKGROUND));
+        drawInteractive(mStartMs);
+        assertEquals(0, mTarget.getCount(RecordingDrawTarget.OP_DRAW_BACKGROUND));
+    }
+
+    @Test
+    public void interactiveMinutesStayWithinBudget() {
+        drawInteractive(mStartMs);
+        for (int i = 1; i < FRAMES; ++i) {
+            assertTrue(drawInteractive(mStartMs + i * MINUTE_MS));
+            assertBudget("interactive frame " + i, INTERACTIVE_OPS);
+        }
+    }
+
+    @Test
+    public void resizeRendersStaticLayerAgain() {
+        drawInteractive(mStartMs);
+        mRenderer.invalidateLayers();
+        drawInteractive(mStartMs);
+        assertBudget("frame after resize", INTERACTIVE_FIRST_OPS);
+    }
+
+    @Test
+    public void preparedStaticLayerIsNotDrawnAgain() {
+        mTarget.reset();
+        mRenderer.prepareStaticLayer(mTarget);
+        assertTrue(mTarget.isBalanced());
+        assertEquals(1, mTarget.getCount(RecordingDrawTarget.OP_DRAW_BACKGROUND));
+        assertEquals(0, mTarget.getCount(RecordingDrawTarget.OP_DRAW_TEXT));
+        drawInteractive(mStartMs);
+        assertBudget("frame after a prepared static layer", INTERACTIVE_OPS);
+    }
+
+    @Test
+    public void tapFeedbackDrawsOverCachedFrame() {
+        drawInteractive(mStartMs);
+        for (int slot = 0; slot < 3; ++slot) {
+            assertFalse(drawInteractive(mStartMs, 0, slot));
+            assertBudget("pressed frame", PRESSED_OPS);
+            assertEquals(0, mTarget.getCount(RecordingDrawTarget.OP_DRAW_COMPLICATION));
+            assertEquals(1, mTarget.getCount(RecordingDrawTarget.OP_DRAW_OVAL));
+        }
+        // released
+        drawInteractive(mStartMs);
+        assertBudget("released frame", PRESSED_OPS - 1);
+    }
+
+    @Test
+    public void interactiveComplicationUpdateComposesFrame() {
+        drawInteractive(mStartMs);
+        drawInteractive(mStartMs, 1, -1);
+        assertBudget("interactive complication update", INTERACTIVE_OPS);
+        assertEquals(3, mTarget.getCount(RecordingDrawTarget.OP_DRAW_COMPLICATION));
+    }
+
+    @Test
+    public void ambientMinutesDoNotComposeTheLayer() {
+        drawAmbient(mStartMs, 0);
+        assertBudget("first ambient frame", AMBIENT_COMPOSE_OPS);
+        for (int i = 1; i < FRAMES; ++i) {
+            drawAmbient(mStartMs + i * MINUTE_MS, 0);
+            assertBudget("ambient minute " + i, AMBIENT_OPS);
+            assertEquals(0, mTarget.getCount(RecordingDrawTarget.OP_BEGIN_LAYER));
+            // a single clear, under the unshifted blit
+            assertEquals(1, mTarget.getCount(RecordingDrawTarget.OP_DRAW_COLOR));
+            // a second frame in the same minute, e.g. for a visibility change
+            drawAmbient(mStartMs + i * MINUTE_MS + 1000, 0);
+            assertBudget("ambient redraw " + i, AMBIENT_OPS);
+        }
+    }
+
+    @Test
+    public void ambientComplicationUpdateComposesLayer() {
+        drawAmbient(mStartMs, 0);
+        drawAmbient(mStartMs, 1);
+        assertBudget("ambient complication update", AMBIENT_COMPOSE_OPS);
+        assertEquals(3, mTarget.getCount(RecordingDrawTarget.OP_DRAW_COMPLICATION));
+        drawAmbient(mStartMs, 1);
+        assertBudget("ambient after complication update", AMBIENT_OPS);
+        mRenderer.invalidateContentLayers();
+        drawAmbient(mStartMs, 1);
+        assertBudget("ambient after property change", AMBIENT_COMPOSE_OPS);
+    }
+
+    @Test
+    public void zoneLinesComposeOnlyWhenTheyChange() {
+        char[][] lines = {"Tokyo 17:00".toCharArray(), "New York 4:00".toCharArray()};
+        mRenderer.setZoneLines(lines, 20f);
+        drawInteractive(mStartMs);
+        drawInteractive(mStartMs + MINUTE_MS);
+        assertBudget("interactive frame with zones", INTERACTIVE_OPS + lines.length);
+        assertEquals(2 + lines.length, mTarget.getCount(RecordingDrawTarget.OP_DRAW_TEXT));
+        // the same array in the same minute
+        assertFalse(drawInteractive(mStartMs + MINUTE_MS + 1000));
+        mRenderer.setZoneLines(new char[][]{lines[0]}, 20f);
+        assertTrue(drawInteractive(mStartMs + MINUTE_MS + 2000));
+        drawAmbient(mStartMs, 0);
+        drawAmbient(mStartMs + MINUTE_MS, 0);
+        assertBudget("ambient minute with zones", AMBIENT_OPS + 1);
+    }
+
+    @Test
+    public void burnInShiftIsATranslation() {
+        mRenderer.setBurnInProtection(true);
+        drawAmbient(mStartMs, 0);
+        for (int i = 1; i < 20; ++i) {
+            drawAmbient(mStartMs + i * MINUTE_MS, 0);
+            assertBudget("ambient shifted frame " + i, AMBIENT_SHIFTED_OPS);
+            assertEquals(1, mTarget.getCount(RecordingDrawTarget.OP_TRANSLATE));
+            assertEquals(1, mTarget.getCount(RecordingDrawTarget.OP_DRAW_COLOR));
+        }
+    }
+
+    @Test
+    public void composedFramesArePublishedOnce() {
+        drawInteractive(mStartMs);
+        assertEquals(1, mPublishCount);
+        assertSame(FRAME_LAYER, mComposer.getShownFrame());
+        // redraws and taps show the same layer
+        drawInteractive(mStartMs + 1000);
+        drawInteractive(mStartMs + 1000, 0, 1);
+        assertEquals(1, mPublishCount);
+        drawInteractive(mStartMs + MINUTE_MS);
+        assertEquals(2, mPublishCount);
+    }
+
+    @Test
+    public void preparedFramesSkipTheRenderer() {
+        mPreparedFrame = new Object();
+        assertFalse(drawInteractive(mStartMs));
+        assertBudget("prepared frame", 0);
+        assertEquals(1, mPreparedFrameDraws);
+        assertEquals(1, mPublishCount);
+        // the same frame until the next minute
+        drawInteractive(mStartMs + 1000, 0, -1, mSeconds);
+        assertBudget("prepared frame with seconds", 1);
+        assertEquals(1, mTarget.getCount(RecordingDrawTarget.OP_DRAW_OVAL));
+        assertEquals(1, mPublishCount);
+        // a tap goes through the frame layer
+        drawInteractive(mStartMs + 2000, 0, 0);
+        assertBudget("pressed frame over a prepared one", INTERACTIVE_FIRST_OPS + 1);
+        assertEquals(2, mPreparedFrameDraws);
+        mPreparedFrame = new Object();
+        drawInteractive(mStartMs + MINUTE_MS);
+        assertEquals(3, mPublishCount);
+        assertSame(mPreparedFrame, mComposer.getShownFrame());
+    }
+
+    @Test
+    public void secondsDotDrawsOverCachedFrame() {
+        drawInteractive(mStartMs);
+        // the quarters of a second of the first minute
+        for (int i = 1; i < 4 * 60; ++i) {
+            drawInteractive(mStartMs + i * 250, 0, -1, mSeconds);
+            assertBudget("seconds frame " + i, PRESSED_OPS);
+            mTarget.reset();
+            mComposer.drawLive(mTarget, mStartMs + i * 250, 0, -1, mSeconds);
+            assertBudget("partial seconds frame " + i, PRESSED_OPS);
+        }
+    }
+
+    @Test
+    public void zoneLinesAreBuiltOnceAMinute() {
+        mComposer.setZoneClock(new ZoneClock(ZONES, ZONE_LABELS), 20f);
+        drawInteractive(mStartMs);
+        for (int i = 1; i < FRAMES; ++i) {
+            assertTrue(drawInteractive(mStartMs + i * MINUTE_MS));
+            assertBudget("interactive frame with zones " + i, INTERACTIVE_OPS + ZONES.length);
+            assertFalse(drawInteractive(mStartMs + i * MINUTE_MS + 1000));
+        }
+        drawAmbient(mStartMs, 0);
+        drawAmbient(mStartMs + MINUTE_MS, 0);
+        assertBudget("ambient minute with zones", AMBIENT_OPS + ZONES.length);
+        // a new format rebuilds the lines, so the frame is composed again
+        drawInteractive(mStartMs + MINUTE_MS);
+        mComposer.invalidateZoneLines();
+        assertTrue(drawInteractive(mStartMs + MINUTE_MS + 1000));
+    }
+
+    @Test
+    public void zoneLinesAllocateOnlyOnANewMinute() {
+        mComposer.setZoneClock(new ZoneClock(ZONES, ZONE_LABELS), 20f);
+        long allocated = allocatedBy(new Runnable() {
+            @Override
+            public void run() {
+                interactiveScenario();
+            }
+        });
+        assertTrue("bytes allocated by " + FRAMES + " interactive minutes with zones: "
+                + allocated, allocated <= FRAMES * ZONE_LINES_BYTES);
+        assertEquals("bytes allocated by redraws with zones", 0,
+                allocatedBy(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < FRAMES; ++i)
+                            drawInteractive(mStartMs + 1000 + i, 0, i % 3);
+                    }
+                }));
+    }
+
+    @Test
+    public void textIsFormattedWhileTheCacheBuilds() {
+        final List<Runnable> builds = new ArrayList<>();
+        setTextCache(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                builds.add(command);
+            }
+        });
+        mComposer.setZoneClock(new ZoneClock(ZONES, ZONE_LABELS), 20f);
+        drawInteractive(mStartMs);
+        assertBudget("frame with formatted text", INTERACTIVE_FIRST_OPS + ZONES.length);
+        drawAmbient(mStartMs + MINUTE_MS, 0);
+        assertBudget("ambient frame with formatted text", AMBIENT_COMPOSE_OPS + ZONES.length);
+        assertEquals(1, builds.size());
+        builds.get(0).run();
+        // the table is used once built
+        drawInteractive(mStartMs + 2 * MINUTE_MS);
+        assertEquals("bytes allocated by frames from the table", 0,
+                allocatedBy(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < FRAMES; ++i)
+                            drawInteractive(mStartMs + 2 * MINUTE_MS + i, 0, -1, mSeconds);
+                    }
+                }));
+    }
+
+    @Test
+    public void interactiveFramesDoNotAllocate() {
+        assertEquals("bytes allocated by " + FRAMES + " interactive frames", 0,
+                allocatedBy(new Runnable() {
+                    @Override
+                    public void run() {
+                        interactiveScenario();
+                    }
+                }));
+    }
+
+    @Test
+    public void ambientFramesDoNotAllocate() {
+        assertEquals("bytes allocated by " + FRAMES + " ambient frames", 0,
+                allocatedBy(new Runnable() {
+                    @Override
+                    public void run() {
+                        ambientScenario();
+                    }
+                }));
+    }
+
+    /**
+     * Interactive minutes, each with a tap on a complication and a move of the seconds dot.
+     */
+    private void interactiveScenario() {
+        for (int i = 0; i < FRAMES; ++i) {
+            drawInteractive(mStartMs + i * MINUTE_MS);
+            drawInteractive(mStartMs + i * MINUTE_MS + 1000, 0, i % 3);
+            drawInteractive(mStartMs + i * MINUTE_MS + 1100);
+            drawInteractive(mStartMs + i * MINUTE_MS + 1250, 0, -1, mSeconds);
+        }
+    }
+
+    /**
+     * Ambient minutes with a complication update every ten minutes.
+     */
+    private void ambientScenario() {
+        for (int i = 0; i < FRAMES; ++i) {
+            drawAmbient(mStartMs + i * MINUTE_MS, i / 10);
+            drawAmbient(mStartMs + i * MINUTE_MS + 1000, i / 10);
+        }
+    }
+
+    /**
+     * Draws an interactive frame the way the engine does.
+     */
+    private boolean drawInteractive(long timeMs) {
+        return drawInteractive(timeMs, 0, -1);
+    }
+
+    private boolean drawInteractive(long timeMs, int contentVersion, int pressedSlot) {
+        return drawInteractive(timeMs, contentVersion, pressedSlot, null);
+    }
+
+    private boolean drawInteractive(long timeMs, int contentVersion, int pressedSlot,
+                                    SecondsIndicator seconds) {
+        mTarget.reset();
+        return mComposer.drawInteractive(mTarget, timeMs, contentVersion, pressedSlot,
+                seconds);
+    }
+
+    private void drawAmbient(long timeMs, int contentVersion) {
+        mTarget.reset();
+        mComposer.drawAmbient(mTarget, timeMs, contentVersion);
+    }
+
+    private void assertBudget(String frame, int maxOps) {
+        assertTrue(frame + " is not balanced: " + mTarget, mTarget.isBalanced());
+        assertTrue(frame + " has " + mTarget.getTotalCount() + " ops, budget " + maxOps
+                + ": " + mTarget, mTarget.getTotalCount() <= maxOps);
+    }
+
+    /**
+     * Bytes allocated by a run of {@code scenario} after a warm up run, the least of a few
+     * runs so that the occasional allocation of the JVM itself does not count.
+     */
+    private static long allocatedBy(Runnable scenario) {
+        scenario.run();
+        long baseline = allocationBaseline();
+        long allocated = Long.MAX_VALUE;
+        for (int i = 0; i < 3; ++i) {
+            long before = allocatedBytes();
+            scenario.run();
+            allocated = Math.min(allocated, allocatedBytes() - before - baseline);
+        }
+        return allocated;
+    }
+
+    private static long allocatedBytes() {
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Bytes reported between two consecutive reads, to be subtracted from a measurement.
+     */
+    private static long allocationBaseline() {
+        long first = allocatedBytes();
+        return allocatedBytes() - first;
+    }
+}
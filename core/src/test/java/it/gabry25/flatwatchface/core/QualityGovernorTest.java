@@ -0,0 +1,156 @@
+package it.gabry25.flatwatchface.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tiers picked from frame costs and battery states, and the hysteresis that keeps them from
+ * flapping.
+ */
+public class QualityGovernorTest {
+    private static final long BUDGET_NS = 8000000;
+    private static final long FRAME_NS = 16000000;
+    private static final long SECOND_NS = 1000000000L;
+    private static final long MINUTE_NS = 60 * SECOND_NS;
+
+    private final QualityGovernor mGovernor = new QualityGovernor(BUDGET_NS, 30, 15);
+    private long mTimeNs;
+
+    @Test
+    public void slowFramesStepDownOneTierAtATime() {
+        assertTrue(stepDown() >= QualityGovernor.STEP_DOWN_FRAMES);
+        assertEquals(QualityGovernor.TIER_FLAT_BACKGROUND, mGovernor.getTier());
+        assertEquals(QualityGovernor.STEP_DOWN_FRAMES, stepDown());
+        assertEquals(QualityGovernor.TIER_NO_ANTIALIAS, mGovernor.getTier());
+        stepDown();
+        assertEquals(QualityGovernor.TIER_NO_MINUTE_ARC, mGovernor.getTier());
+        frames(10 * QualityGovernor.STEP_DOWN_FRAMES, FRAME_NS, 3 * BUDGET_NS);
+        assertEquals(QualityGovernor.TIER_NO_MINUTE_ARC, mGovernor.getTier());
+    }
+
+    @Test
+    public void fastFramesStepBackUpSlowly() {
+        stepDown();
+        frames((int) (QualityGovernor.STEP_UP_NS / 2 / FRAME_NS), FRAME_NS, BUDGET_NS / 10);
+        assertEquals(QualityGovernor.TIER_FLAT_BACKGROUND, mGovernor.getTier());
+        frames((int) (QualityGovernor.STEP_UP_NS / FRAME_NS), FRAME_NS, BUDGET_NS / 10);
+        assertEquals(QualityGovernor.TIER_FULL, mGovernor.getTier());
+    }
+
+    @Test
+    public void recoversWithAFrameAMinute() {
+        stepDown();
+        stepDown();
+        assertEquals(QualityGovernor.TIER_NO_ANTIALIAS, mGovernor.getTier());
+        // only the minute changes: the average needs a few frames to fall, then the time
+        int minutes = 0;
+        while (mGovernor.getTier() != QualityGovernor.TIER_FULL && minutes < 60) {
+            mTimeNs += MINUTE_NS;
+            mGovernor.onFrame(mTimeNs, BUDGET_NS / 10);
+            ++minutes;
+        }
+        assertEquals(QualityGovernor.TIER_FULL, mGovernor.getTier());
+        assertTrue(minutes <= 2 * (8 + QualityGovernor.STEP_UP_NS / MINUTE_NS));
+    }
+
+    @Test
+    public void framesNearTheBudgetDoNotFlap() {
+        stepDown();
+        int changes = 0;
+        for (int i = 0; i < 10 * QualityGovernor.STEP_UP_NS / SECOND_NS; ++i) {
+            // between half the budget and the budget on average, a frame a second
+            mTimeNs += SECOND_NS;
+            long durationNs = i % 2 == 0 ? BUDGET_NS * 9 / 10 : BUDGET_NS * 3 / 10;
+            if (mGovernor.onFrame(mTimeNs, durationNs))
+                ++changes;
+        }
+        assertEquals(0, changes);
+        assertEquals(QualityGovernor.TIER_FLAT_BACKGROUND, mGovernor.getTier());
+    }
+
+    @Test
+    public void batteryLevelHasHysteresis() {
+        assertFalse(mGovernor.onBatteryChanged(50, false, false));
+        assertTrue(mGovernor.onBatteryChanged(30, false, false));
+        assertEquals(QualityGovernor.TIER_FLAT_BACKGROUND, mGovernor.getTier());
+        assertTrue(mGovernor.onBatteryChanged(15, false, false));
+        assertEquals(QualityGovernor.TIER_NO_MINUTE_ARC, mGovernor.getTier());
+        // back over the thresholds, but within the margin
+        assertFalse(mGovernor.onBatteryChanged(15 + QualityGovernor.BATTERY_MARGIN, false,
+                false));
+        assertTrue(mGovernor.onBatteryChanged(16 + QualityGovernor.BATTERY_MARGIN, false,
+                false));
+        assertEquals(QualityGovernor.TIER_FLAT_BACKGROUND, mGovernor.getTier());
+        assertTrue(mGovernor.onBatteryChanged(31 + QualityGovernor.BATTERY_MARGIN, false,
+                false));
+        assertEquals(QualityGovernor.TIER_FULL, mGovernor.getTier());
+    }
+
+    @Test
+    public void chargingAndPowerSave() {
+        mGovernor.onBatteryChanged(10, false, false);
+        assertTrue(mGovernor.onBatteryChanged(10, true, false));
+        assertEquals(QualityGovernor.TIER_FULL, mGovernor.getTier());
+        assertTrue(mGovernor.onBatteryChanged(80, false, true));
+        assertEquals(QualityGovernor.TIER_NO_ANTIALIAS, mGovernor.getTier());
+        assertTrue(mGovernor.onBatteryChanged(80, false, false));
+        assertEquals(QualityGovernor.TIER_FULL, mGovernor.getTier());
+    }
+
+    @Test
+    public void tierIsTheLowestQualityAskedFor() {
+        stepDown();
+        stepDown();
+        assertEquals(QualityGovernor.TIER_NO_ANTIALIAS, mGovernor.getTier());
+        assertFalse(mGovernor.onBatteryChanged(30, false, false));
+        assertTrue(mGovernor.onBatteryChanged(10, false, false));
+        assertEquals(QualityGovernor.TIER_NO_MINUTE_ARC, mGovernor.getTier());
+        assertTrue(mGovernor.onBatteryChanged(10, true, false));
+        assertEquals(QualityGovernor.TIER_NO_ANTIALIAS, mGovernor.getTier());
+    }
+
+    @Test
+    public void rendererSkipsDroppedParts() {
+        FaceLayout layout = new FaceLayout(30f, 30, new SlotSpec[0]);
+        layout.layout(400, 400);
+        FaceRenderer renderer = new FaceRenderer(layout, 20f, 60f, 4);
+        RecordingDrawTarget target = new RecordingDrawTarget();
+        char[] time = "8:00".toCharArray();
+        char[] date = "Thu, 14 Mar".toCharArray();
+        renderer.setQualityTier(QualityGovernor.TIER_NO_MINUTE_ARC);
+        renderer.drawInteractive(target, 0, 8, 0, time, date, 0, -1);
+        assertEquals(0, target.getCount(RecordingDrawTarget.OP_DRAW_BACKGROUND));
+        assertEquals(0, target.getCount(RecordingDrawTarget.OP_DRAW_ARC));
+        target.reset();
+        renderer.setQualityTier(QualityGovernor.TIER_FULL);
+        renderer.drawInteractive(target, 0, 8, 0, time, date, 0, -1);
+        assertEquals(1, target.getCount(RecordingDrawTarget.OP_DRAW_BACKGROUND));
+        assertEquals(1, target.getCount(RecordingDrawTarget.OP_DRAW_ARC));
+    }
+
+    /**
+     * Draws slow frames until the cost tier steps down, and returns how many it took.
+     */
+    private int stepDown() {
+        int frames = 1;
+        mTimeNs += FRAME_NS;
+        while (!mGovernor.onFrame(mTimeNs, 3 * BUDGET_NS)) {
+            mTimeNs += FRAME_NS;
+            ++frames;
+        }
+        return frames;
+    }
+
+    /**
+     * Draws {@code count} frames {@code intervalNs} apart.
+     */
+    private void frames(int count, long intervalNs, long durationNs) {
+        for (int i = 0; i < count; ++i) {
+            mTimeNs += intervalNs;
+            mGovernor.onFrame(mTimeNs, durationNs);
+        }
+    }
+}
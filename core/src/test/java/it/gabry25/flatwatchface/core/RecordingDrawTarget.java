@@ -0,0 +1,141 @@
+package it.gabry25.flatwatchface.core;
+
+import java.util.Arrays;
+
+/**
+ * Counts the operations of a frame by kind, without allocating, so it can be used to
+ * measure the allocations of the renderer too.
+ */
+final class RecordingDrawTarget implements DrawTarget {
+    static final int OP_BEGIN_LAYER = 0;
+    static final int OP_END_LAYER = 1;
+    static final int OP_DRAW_LAYER = 2;
+    static final int OP_DRAW_COLOR = 3;
+    static final int OP_DRAW_BACKGROUND = 4;
+    static final int OP_DRAW_COMPLICATION = 5;
+    static final int OP_DRAW_TEXT = 6;
+    static final int OP_DRAW_LINE = 7;
+    static final int OP_DRAW_OVAL = 8;
+    static final int OP_DRAW_ARC = 9;
+    static final int OP_SAVE = 10;
+    static final int OP_ROTATE = 11;
+    static final int OP_RESTORE = 12;
+    static final int OP_TRANSLATE = 13;
+    static final int OP_COUNT = 14;
+
+    private static final String[] OP_NAMES = {
+            "beginLayer", "endLayer", "drawLayer", "drawColor", "drawBackground",
+            "drawComplication", "drawText", "drawLine", "drawOval", "drawArc",
+            "save", "rotate", "restore", "translate"
+    };
+
+    private final int[] mCounts = new int[OP_COUNT];
+    private int mSaveDepth;
+    private int mLayer = -1;
+
+    void reset() {
+        Arrays.fill(mCounts, 0);
+    }
+
+    int getCount(int op) {
+        return mCounts[op];
+    }
+
+    int getTotalCount() {
+        int total = 0;
+        for (int count : mCounts)
+            total += count;
+        return total;
+    }
+
+    /**
+     * Whether every save and layer was closed.
+     */
+    boolean isBalanced() {
+        return mSaveDepth == 0 && mLayer < 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < OP_COUNT; ++i)
+            if (mCounts[i] != 0)
+                builder.append(OP_NAMES[i]).append('=').append(mCounts[i]).append(' ');
+        return builder.toString().trim();
+    }
+
+    @Override
+    public void beginLayer(int layer) {
+        ++mCounts[OP_BEGIN_LAYER];
+        mLayer = layer;
+    }
+
+    @Override
+    public void endLayer() {
+        ++mCounts[OP_END_LAYER];
+        mLayer = -1;
+    }
+
+    @Override
+    public void drawLayer(int layer, float left, float top) {
+        ++mCounts[OP_DRAW_LAYER];
+    }
+
+    @Override
+    public void drawColor(int color) {
+        ++mCounts[OP_DRAW_COLOR];
+    }
+
+    @Override
+    public void drawBackground() {
+        ++mCounts[OP_DRAW_BACKGROUND];
+    }
+
+    @Override
+    public void drawComplication(int slot, long timeMs) {
+        ++mCounts[OP_DRAW_COMPLICATION];
+    }
+
+    @Override
+    public void drawText(char[] text, float x, float y, int paint) {
+        ++mCounts[OP_DRAW_TEXT];
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        ++mCounts[OP_DRAW_LINE];
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, int paint) {
+        ++mCounts[OP_DRAW_OVAL];
+    }
+
+    @Override
+    public void drawArc(float left, float top, float right, float bottom,
+                        float startAngle, float sweepAngle, int paint) {
+        ++mCounts[OP_DRAW_ARC];
+    }
+
+    @Override
+    public void save() {
+        ++mCounts[OP_SAVE];
+        ++mSaveDepth;
+    }
+
+    @Override
+    public void rotate(float degrees, float px, float py) {
+        ++mCounts[OP_ROTATE];
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        ++mCounts[OP_TRANSLATE];
+    }
+
+    @Override
+    public void restore() {
+        ++mCounts[OP_RESTORE];
+        --mSaveDepth;
+    }
+}
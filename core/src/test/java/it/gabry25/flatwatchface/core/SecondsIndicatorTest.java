@@ -0,0 +1,83 @@
+package it.gabry25.flatwatchface.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Steps of the seconds dot, the area a frame has to repaint for it, and the rate dropping
+ * under slow frames.
+ */
+public class SecondsIndicatorTest {
+    private static final long BUDGET_NS = 4000000;
+    private static final float DOT_RADIUS = 4f;
+
+    private static SecondsIndicator newIndicator(int rate) {
+        FaceLayout layout = new FaceLayout(30f, 30, new SlotSpec[0]);
+        layout.layout(400, 400);
+        SecondsIndicator indicator = new SecondsIndicator(rate, BUDGET_NS, DOT_RADIUS);
+        indicator.layout(layout);
+        return indicator;
+    }
+
+    @Test
+    public void movesOncePerStep() {
+        SecondsIndicator indicator = newIndicator(4);
+        assertTrue(indicator.moveTo(1000));
+        assertFalse(indicator.moveTo(1249));
+        assertEquals(1, indicator.getDelayToNextMove(1249));
+        assertEquals(250, indicator.getDelayToNextMove(1250));
+        assertTrue(indicator.moveTo(1250));
+        // rates that do not divide a second still move on the step
+        SecondsIndicator third = newIndicator(3);
+        long next = 5000 + third.getDelayToNextMove(5000);
+        third.moveTo(5000);
+        assertFalse(third.moveTo(next - 1));
+        assertTrue(third.moveTo(next));
+    }
+
+    @Test
+    public void dirtyAreaCoversOldAndNewDot() {
+        SecondsIndicator indicator = newIndicator(1);
+        // at twelve o'clock
+        indicator.moveTo(60000);
+        float oldLeft = indicator.getDotLeft();
+        float oldTop = indicator.getDotTop();
+        assertEquals(200f, (indicator.getDotLeft() + indicator.getDotRight()) / 2, 0.01f);
+        assertTrue(indicator.getDirtyLeft() <= indicator.getDotLeft());
+        assertTrue(indicator.getDirtyRight() >= indicator.getDotRight());
+        indicator.moveTo(61000);
+        assertTrue(indicator.getDotLeft() > oldLeft);
+        assertTrue(indicator.getDirtyLeft() <= oldLeft);
+        assertTrue(indicator.getDirtyTop() <= Math.min(oldTop, indicator.getDotTop()));
+        assertTrue(indicator.getDirtyRight() >= indicator.getDotRight());
+        assertTrue(indicator.getDirtyBottom() >= indicator.getDotBottom());
+        // small, compared to the surface
+        assertTrue(indicator.getDirtyRight() - indicator.getDirtyLeft() < 40);
+        // after a reset there is no old dot to erase
+        indicator.reset();
+        indicator.moveTo(90000);
+        assertEquals(2 * DOT_RADIUS + 2, indicator.getDirtyBottom() - indicator.getDirtyTop(),
+                1f);
+    }
+
+    @Test
+    public void slowFramesLowerTheRate() {
+        SecondsIndicator indicator = newIndicator(8);
+        for (int i = 0; i < SecondsIndicator.SLOW_FRAMES - 1; ++i)
+            assertFalse(indicator.onFrameDrawn(2 * BUDGET_NS));
+        assertTrue(indicator.onFrameDrawn(2 * BUDGET_NS));
+        assertEquals(4, indicator.getRate());
+        for (int i = 0; i < 10 * SecondsIndicator.SLOW_FRAMES; ++i)
+            indicator.onFrameDrawn(2 * BUDGET_NS);
+        assertEquals(1, indicator.getRate());
+        // frames between half the budget and the budget keep the rate
+        for (int i = 0; i < 100 * SecondsIndicator.FAST_SECONDS; ++i)
+            assertFalse(indicator.onFrameDrawn(BUDGET_NS * 3 / 4));
+        for (int i = 0; i < 100 * SecondsIndicator.FAST_SECONDS; ++i)
+            indicator.onFrameDrawn(BUDGET_NS / 10);
+        assertEquals(8, indicator.getRate());
+    }
+}
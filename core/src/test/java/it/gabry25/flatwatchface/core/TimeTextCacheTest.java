@@ -0,0 +1,58 @@
+package it.gabry25.flatwatchface.core;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * How often the day tables are built around midnight, when the frame of the next minute is
+ * looked up ahead of time.
+ */
+public class TimeTextCacheTest {
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private int mBuilds;
+    // builds right away, on the calling thread
+    private final Executor mExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            ++mBuilds;
+            command.run();
+        }
+    };
+
+    private static Calendar at(int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(UTC, Locale.US);
+        calendar.clear();
+        calendar.set(2019, Calendar.MARCH, day, hour, minute);
+        return calendar;
+    }
+
+    @Test
+    public void peekingAtTheNextDayKeepsTheCurrentOne() {
+        TimeTextCache cache = new TimeTextCache(mExecutor);
+        cache.setFormat(Locale.US, "HH:mm", "dd MMM");
+        Calendar lastMinute = at(10, 23, 59);
+        Calendar midnight = at(11, 0, 0);
+        assertNull(cache.getTime(lastMinute));
+        assertEquals(1, mBuilds);
+        // the frame of midnight is prepared during the last minute of the day
+        assertNull(cache.peekTime(midnight));
+        assertNull(cache.peekDate(midnight));
+        assertArrayEquals("23:59".toCharArray(), cache.getTime(lastMinute));
+        assertEquals(1, mBuilds);
+        // at midnight the live frame builds the next day, once
+        assertNull(cache.getTime(midnight));
+        assertArrayEquals("00:00".toCharArray(), cache.getTime(midnight));
+        assertArrayEquals("11 Mar".toCharArray(), cache.getDate(midnight));
+        assertArrayEquals("00:01".toCharArray(), cache.peekTime(at(11, 0, 1)));
+        assertEquals(2, mBuilds);
+    }
+}
@@ -0,0 +1,97 @@
+package it.gabry25.flatwatchface.core;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local time in other zones across daylight saving changes, and how often the zone rules are
+ * read for it.
+ */
+public class ZoneClockTest {
+    private static final long MINUTE_MS = 60 * 1000;
+    private static final long HOUR_MS = 60 * MINUTE_MS;
+    // 2019-03-10 07:00 UTC, when New York moves from UTC-5 to UTC-4
+    private static final long NEW_YORK_DST_MS = utc(2019, Calendar.MARCH, 10, 7, 0);
+
+    private static long utc(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    @Test
+    public void followsDaylightSavingChanges() {
+        ZoneClock clock = new ZoneClock(new String[]{"America/New_York"}, null);
+        assertEquals(-5 * HOUR_MS, clock.getOffsetMs(0, NEW_YORK_DST_MS - 1));
+        // 1:59, then 3:00
+        assertEquals(60 + 59, clock.getMinuteOfDay(0, NEW_YORK_DST_MS - MINUTE_MS));
+        assertEquals(3 * 60, clock.getMinuteOfDay(0, NEW_YORK_DST_MS));
+        assertEquals(-4 * HOUR_MS, clock.getOffsetMs(0, NEW_YORK_DST_MS));
+        // and back: a lookup before the transition reads the rules again
+        assertEquals(-5 * HOUR_MS, clock.getOffsetMs(0, NEW_YORK_DST_MS - 1));
+    }
+
+    @Test
+    public void readsRulesOnlyAtTransitions() {
+        ZoneClock clock = new ZoneClock(new String[]{"America/New_York", "Asia/Kolkata",
+                "Asia/Kathmandu"}, null);
+        long start = NEW_YORK_DST_MS - 12 * HOUR_MS;
+        for (long time = start; time < start + 24 * HOUR_MS; time += MINUTE_MS) {
+            for (int zone = 0; zone < clock.getZoneCount(); ++zone)
+                clock.getMinuteOfDay(zone, time);
+        }
+        // one read per zone, and one more at the transition
+        assertEquals(4, clock.getRefreshCount());
+        clock.reset();
+        clock.getMinuteOfDay(1, start);
+        assertEquals(5, clock.getRefreshCount());
+    }
+
+    @Test
+    public void handlesFractionalOffsets() {
+        ZoneClock clock = new ZoneClock(new String[]{"Asia/Kolkata", "Asia/Kathmandu"}, null);
+        long time = utc(2019, Calendar.MARCH, 14, 20, 0);
+        // 1:30 and 1:45 of the next day
+        assertEquals(90, clock.getMinuteOfDay(0, time));
+        assertEquals(105, clock.getMinuteOfDay(1, time));
+        // before 1970
+        assertEquals(8 * 60 + 30, clock.getMinuteOfDay(0, utc(1960, Calendar.JUNE, 1, 3, 0)));
+    }
+
+    @Test
+    public void formatsLabelAndTime() {
+        ZoneClock clock = new ZoneClock(new String[]{"America/New_York", "Asia/Tokyo"},
+                new String[]{"Home"});
+        assertEquals("Home 9:15", new String(clock.formatLine(0, "9:15".toCharArray())));
+        assertEquals("Tokyo 9:15", new String(clock.formatLine(1, "9:15".toCharArray())));
+        assertEquals("Port au Prince", ZoneClock.cityOf("America/Port_au_Prince"));
+    }
+
+    @Test
+    public void timeComesFromTheTextCache() {
+        TimeTextCache cache = new TimeTextCache(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        cache.setFormat(Locale.US, "h:mm a", "EE, dd MMM");
+        Calendar tokyo = Calendar.getInstance(TimeZone.getTimeZone("Asia/Tokyo"));
+        tokyo.setTimeInMillis(NEW_YORK_DST_MS);
+        // builds the text of the day
+        cache.getTime(tokyo);
+        ZoneClock clock = new ZoneClock(new String[]{"Asia/Tokyo"}, null);
+        assertArrayEquals(cache.getTime(tokyo),
+                cache.getTimeOfDay(clock.getMinuteOfDay(0, NEW_YORK_DST_MS)));
+        assertEquals("Tokyo 4:00 PM", new String(clock.formatLine(0,
+                cache.getTimeOfDay(clock.getMinuteOfDay(0, NEW_YORK_DST_MS)))));
+    }
+}
@@ -0,0 +1,265 @@
+package it.gabry25.flatwatchface.tools;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.text.SimpleDateFormat;
+import java.time.chrono.IsoChronology;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.FormatStyle;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+
+import it.gabry25.flatwatchface.core.DisplayList;
+import it.gabry25.flatwatchface.core.FaceLayout;
+import it.gabry25.flatwatchface.core.FaceRenderer;
+import it.gabry25.flatwatchface.core.SlotSpec;
+
+/**
+ * Renders the face headless, as PNGs, for every combination of surface size, screen shape,
+ * locale, 12/24 hour format, mode and time. A frame is drawn by the {@link FaceRenderer}
+ * into a {@link DisplayList}, which is replayed on a {@link Java2DDrawTarget}; the
+ * variants are split over the cores with fork/join.
+ * <p>
+ * Options, all optional, as {@code --name=value}:
+ * <ul>
+ * <li>{@code --res}: the resources of the app, {@code app/src/main/res}</li>
+ * <li>{@code --out}: the output directory, {@code build/renders}</li>
+ * <li>{@code --sizes}: surface sizes in pixels</li>
+ * <li>{@code --shapes}: {@code round} and/or {@code square}</li>
+ * <li>{@code --locales}: language tags</li>
+ * <li>{@code --times}: times of day as {@code HH:mm}</li>
+ * </ul>
+ */
+public final class BatchRender {
+    private static final String DATE_PATTERN = "EE, dd MMM";
+    /**
+     * Variants rendered by a task without splitting it further.
+     */
+    private static final int LEAF_VARIANTS = 4;
+
+    private final ResourceValues mValues;
+    private final VectorDrawing mBackground;
+    private final File mOutDir;
+    // paints by surface size, created before the tasks start
+    private final Map<Integer, PaintStyle[]> mStyles = new HashMap<>();
+
+    private BatchRender(ResourceValues values, VectorDrawing background, File outDir) {
+        mValues = values;
+        mBackground = background;
+        mOutDir = outDir;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        options.put("res", "app/src/main/res");
+        options.put("out", "build/renders");
+        options.put("sizes", "280,320,360,390,400,454,480");
+        options.put("shapes", "round,square");
+        options.put("locales", "en-US,en-GB,it-IT,de-DE,fr-FR,es-ES,pt-BR,ru-RU,ja-JP,zh-CN,"
+                + "ko-KR,ar-EG,hi-IN,th-TH");
+        options.put("times", "10:10,00:00,12:45,23:59");
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0 || !options.containsKey(
+                    arg.substring(2, equals)))
+                throw new IllegalArgumentException("Unknown option " + arg);
+            options.put(arg.substring(2, equals), arg.substring(equals + 1));
+        }
+        File resDir = new File(options.get("res"));
+        ResourceValues values = ResourceValues.load(resDir);
+        BatchRender render = new BatchRender(values,
+                VectorDrawing.load(new File(resDir, "drawable/background.xml"), values),
+                new File(options.get("out")));
+        List<Variant> variants = new ArrayList<>();
+        for (String size : options.get("sizes").split(",")) {
+            for (String shape : options.get("shapes").split(",")) {
+                for (String locale : options.get("locales").split(",")) {
+                    for (int format = 0; format < 2; ++format) {
+                        for (int mode = 0; mode < 2; ++mode) {
+                            for (String time : options.get("times").split(",")) {
+                                String[] hm = time.split(":");
+                                variants.add(new Variant(Integer.parseInt(size),
+                                        shape.equals("round"), Locale.forLanguageTag(locale),
+                                        format == 1, mode == 1,
+                                        Integer.parseInt(hm[0]) * 60 + Integer.parseInt(hm[1])));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        long start = System.nanoTime();
+        render.renderAll(variants);
+        System.out.println("Rendered " + variants.size() + " variants to " + render.mOutDir
+                + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+
+    private void renderAll(List<Variant> variants) throws IOException {
+        if (!mOutDir.isDirectory() && !mOutDir.mkdirs())
+            throw new IOException("Cannot create " + mOutDir);
+        for (Variant variant : variants) {
+            if (!mStyles.containsKey(variant.mSize))
+                mStyles.put(variant.mSize, PaintStyle.createAll(mValues, density(variant.mSize)));
+        }
+        try {
+            ForkJoinPool.commonPool().invoke(new RenderTask(variants, 0, variants.size()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Returns the pixels per dp of a watch of the given size: hdpi for the small screens,
+     * xhdpi for the others.
+     */
+    private static float density(int size) {
+        return size < 360 ? 1.5f : 2f;
+    }
+
+    private void render(Variant variant) throws IOException {
+        float density = density(variant.mSize);
+        FaceLayout layout = new FaceLayout(mValues.getDimension("minute_circle_offset", density),
+                (int) mValues.getDimension("center_vertical_offset", density), new SlotSpec[0]);
+        layout.layout(variant.mSize, variant.mSize);
+        FaceRenderer renderer = new FaceRenderer(layout,
+                mValues.getDimension("time_vertical_offset", density),
+                mValues.getDimension("date_vertical_offset", density),
+                (int) mValues.getDimension("burn_in_shift", density));
+        // a fixed day, so the dates of all renders match
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), variant.mLocale);
+        calendar.clear();
+        calendar.set(2019, Calendar.MARCH, 14, variant.mMinuteOfDay / 60,
+                variant.mMinuteOfDay % 60);
+        SimpleDateFormat timeFormat = new SimpleDateFormat(
+                timePattern(variant.mLocale, variant.mIs24Hour), variant.mLocale);
+        SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_PATTERN, variant.mLocale);
+        timeFormat.setTimeZone(calendar.getTimeZone());
+        dateFormat.setTimeZone(calendar.getTimeZone());
+        char[] time = timeFormat.format(calendar.getTime()).toCharArray();
+        char[] date = dateFormat.format(calendar.getTime()).toCharArray();
+
+        DisplayList list = new DisplayList();
+        long timeMs = calendar.getTimeInMillis();
+        if (variant.mAmbient)
+            renderer.drawAmbient(list, timeMs, time, date, 0);
+        else
+            renderer.drawInteractive(list, timeMs, calendar.get(Calendar.HOUR),
+                    calendar.get(Calendar.MINUTE), time, date, 0, -1);
+        Java2DDrawTarget target = new Java2DDrawTarget(variant.mSize, variant.mSize,
+                mStyles.get(variant.mSize), mBackground);
+        list.replay(target);
+        BufferedImage image = target.getImage();
+        target.dispose();
+        if (variant.mRound)
+            maskRound(image);
+        ImageIO.write(image, "png", new File(mOutDir, variant.getFileName()));
+    }
+
+    /**
+     * Blacks out what a round screen does not show.
+     */
+    private static void maskRound(BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        Area outside = new Area(new Rectangle2D.Float(0, 0, image.getWidth(),
+                image.getHeight()));
+        outside.subtract(new Area(new Ellipse2D.Float(0, 0, image.getWidth(),
+                image.getHeight())));
+        graphics.setColor(Color.BLACK);
+        graphics.fill(outside);
+        graphics.dispose();
+    }
+
+    /**
+     * Returns the short time pattern of the locale in the 12 or 24 hour format, close to
+     * what {@code DateFormat.getBestDateTimePattern} gives on the watch.
+     */
+    static String timePattern(Locale locale, boolean is24Hour) {
+        String pattern = DateTimeFormatterBuilder.getLocalizedDateTimePattern(null,
+                FormatStyle.SHORT, IsoChronology.INSTANCE, locale);
+        if (is24Hour)
+            return pattern.replace('h', 'H').replace('K', 'H')
+                    .replaceAll("\\s*a+\\s*", "").trim();
+        pattern = pattern.replace('H', 'h').replace('k', 'h');
+        return pattern.indexOf('a') < 0 ? pattern + " a" : pattern;
+    }
+
+    /**
+     * One render: a combination of the options.
+     */
+    private static final class Variant {
+        final int mSize;
+        final boolean mRound;
+        final Locale mLocale;
+        final boolean mIs24Hour;
+        final boolean mAmbient;
+        final int mMinuteOfDay;
+
+        Variant(int size, boolean round, Locale locale, boolean is24Hour, boolean ambient,
+                int minuteOfDay) {
+            mSize = size;
+            mRound = round;
+            mLocale = locale;
+            mIs24Hour = is24Hour;
+            mAmbient = ambient;
+            mMinuteOfDay = minuteOfDay;
+        }
+
+        String getFileName() {
+            return String.format(Locale.ROOT, "%d_%s_%s_%s_%s_%02d%02d.png", mSize,
+                    mRound ? "round" : "square", mLocale.toLanguageTag(),
+                    mIs24Hour ? "24h" : "12h", mAmbient ? "ambient" : "interactive",
+                    mMinuteOfDay / 60, mMinuteOfDay % 60);
+        }
+    }
+
+    /**
+     * Renders a range of the variants, split in halves down to {@link #LEAF_VARIANTS}.
+     */
+    private final class RenderTask extends RecursiveAction {
+        private final List<Variant> mVariants;
+        private final int mFrom;
+        private final int mTo;
+
+        RenderTask(List<Variant> variants, int from, int to) {
+            mVariants = variants;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (mTo - mFrom > LEAF_VARIANTS) {
+                int middle = (mFrom + mTo) >>> 1;
+                invokeAll(new RenderTask(mVariants, mFrom, middle),
+                        new RenderTask(mVariants, middle, mTo));
+                return;
+            }
+            for (int i = mFrom; i < mTo; ++i) {
+                try {
+                    render(mVariants.get(i));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
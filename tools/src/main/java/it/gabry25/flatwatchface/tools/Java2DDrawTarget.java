@@ -0,0 +1,178 @@
+package it.gabry25.flatwatchface.tools;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import it.gabry25.flatwatchface.core.DrawTarget;
+
+/**
+ * Draws the face on a {@link BufferedImage}, with the same layers as the canvas target of
+ * the engine. Complications are not drawn: their content comes from other apps.
+ */
+final class Java2DDrawTarget implements DrawTarget {
+    private final int mWidth;
+    private final int mHeight;
+    private final PaintStyle[] mStyles;
+    private final VectorDrawing mBackground;
+    private final BufferedImage mImage;
+    private final BufferedImage[] mLayers = new BufferedImage[LAYER_COUNT];
+    private final Graphics2D mImageGraphics;
+    private Graphics2D mGraphics;
+    private final Deque<AffineTransform> mSaved = new ArrayDeque<>();
+    private final Line2D.Float mLine = new Line2D.Float();
+    private final Ellipse2D.Float mOval = new Ellipse2D.Float();
+    private final Arc2D.Float mArc = new Arc2D.Float(Arc2D.OPEN);
+
+    Java2DDrawTarget(int width, int height, PaintStyle[] styles, VectorDrawing background) {
+        mWidth = width;
+        mHeight = height;
+        mStyles = styles;
+        mBackground = background;
+        mImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        mImageGraphics = createGraphics(mImage);
+        mGraphics = mImageGraphics;
+    }
+
+    BufferedImage getImage() {
+        return mImage;
+    }
+
+    /**
+     * Releases the graphics of the image and the layers.
+     */
+    void dispose() {
+        mImageGraphics.dispose();
+    }
+
+    private static Graphics2D createGraphics(BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS,
+                RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
+                RenderingHints.VALUE_STROKE_PURE);
+        return graphics;
+    }
+
+    @Override
+    public void beginLayer(int layer) {
+        if (mLayers[layer] == null)
+            mLayers[layer] = new BufferedImage(mWidth, mHeight, BufferedImage.TYPE_INT_ARGB);
+        mGraphics = createGraphics(mLayers[layer]);
+        // like a fresh canvas, the layer starts transparent
+        mGraphics.setComposite(AlphaComposite.Clear);
+        mGraphics.fillRect(0, 0, mWidth, mHeight);
+        mGraphics.setComposite(AlphaComposite.SrcOver);
+    }
+
+    @Override
+    public void endLayer() {
+        mGraphics.dispose();
+        mGraphics = mImageGraphics;
+    }
+
+    @Override
+    public void drawLayer(int layer, float left, float top) {
+        mGraphics.drawImage(mLayers[layer], Math.round(left), Math.round(top), null);
+    }
+
+    @Override
+    public void drawColor(int color) {
+        // Canvas.drawColor replaces the pixels
+        mGraphics.setComposite(AlphaComposite.Src);
+        mGraphics.setColor(new Color(color, true));
+        mGraphics.fillRect(0, 0, mWidth, mHeight);
+        mGraphics.setComposite(AlphaComposite.SrcOver);
+    }
+
+    @Override
+    public void drawBackground() {
+        mGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        mBackground.draw(mGraphics, mWidth, mHeight);
+    }
+
+    @Override
+    public void drawComplication(int slot, long timeMs) {
+    }
+
+    @Override
+    public void drawText(char[] text, float x, float y, int paint) {
+        PaintStyle style = apply(paint);
+        mGraphics.setFont(style.mFont);
+        String string = new String(text);
+        float width = (float) style.mFont.getStringBounds(string,
+                mGraphics.getFontRenderContext()).getWidth();
+        mGraphics.drawString(string, x - width / 2, y);
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, int paint) {
+        apply(paint);
+        mLine.setLine(startX, startY, stopX, stopY);
+        mGraphics.draw(mLine);
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, int paint) {
+        PaintStyle style = apply(paint);
+        mOval.setFrame(left, top, right - left, bottom - top);
+        if (style.mStroke != null)
+            mGraphics.draw(mOval);
+        else
+            mGraphics.fill(mOval);
+    }
+
+    @Override
+    public void drawArc(float left, float top, float right, float bottom,
+                        float startAngle, float sweepAngle, int paint) {
+        PaintStyle style = apply(paint);
+        // Canvas angles grow clockwise on screen, Arc2D ones counterclockwise
+        mArc.setArc(left, top, right - left, bottom - top, -startAngle, -sweepAngle,
+                style.mStroke != null ? Arc2D.OPEN : Arc2D.PIE);
+        if (style.mStroke != null)
+            mGraphics.draw(mArc);
+        else
+            mGraphics.fill(mArc);
+    }
+
+    @Override
+    public void save() {
+        mSaved.push(mGraphics.getTransform());
+    }
+
+    @Override
+    public void rotate(float degrees, float px, float py) {
+        mGraphics.rotate(Math.toRadians(degrees), px, py);
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        mGraphics.translate(dx, dy);
+    }
+
+    @Override
+    public void restore() {
+        mGraphics.setTransform(mSaved.pop());
+    }
+
+    private PaintStyle apply(int paint) {
+        PaintStyle style = mStyles[paint];
+        mGraphics.setColor(style.mColor);
+        if (style.mStroke != null)
+            mGraphics.setStroke(style.mStroke);
+        mGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, style.mAntiAlias
+                ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+        return style;
+    }
+}
@@ -0,0 +1,75 @@
+package it.gabry25.flatwatchface.tools;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+
+import it.gabry25.flatwatchface.core.DrawTarget;
+
+/**
+ * The Java2D equivalent of an Android {@code Paint} of the face: a fill or a stroke with a
+ * color, or centered text in a font.
+ */
+final class PaintStyle {
+    /**
+     * Width of the hour tick, as in the engine.
+     */
+    private static final float STROKE_WIDTH = 6f;
+    private static final int HIGHLIGHT_ALPHA = 0x60;
+
+    final Color mColor;
+    /**
+     * The stroke, or null to fill.
+     */
+    final BasicStroke mStroke;
+    /**
+     * The font of centered text, or null.
+     */
+    final Font mFont;
+    final boolean mAntiAlias;
+
+    private PaintStyle(int color, BasicStroke stroke, Font font, boolean antiAlias) {
+        mColor = new Color(color, true);
+        mStroke = stroke;
+        mFont = font;
+        mAntiAlias = antiAlias;
+    }
+
+    /**
+     * Returns the paints set up like the engine does, indexed by {@code DrawTarget} paint
+     * id. The ambient ones are those of a screen without low-bit ambient.
+     *
+     * @param density pixels per dp
+     */
+    static PaintStyle[] createAll(ResourceValues values, float density) {
+        float minutesStrokeWidth = values.getDimension("minutes_stroke_width", density);
+        Font timeFont = new Font(Font.SANS_SERIF, Font.PLAIN, 1)
+                .deriveFont(values.getDimension("time_text_size", density));
+        Font dateFont = new Font(Font.SANS_SERIF, Font.PLAIN, 1)
+                .deriveFont(values.getDimension("date_text_size", density));
+        int highlight = values.getColor("complication_highlight");
+        PaintStyle[] styles = new PaintStyle[DrawTarget.PAINT_COUNT];
+        styles[DrawTarget.PAINT_HOUR_TICK] = new PaintStyle(values.getColor("analog_hours"),
+                new BasicStroke(STROKE_WIDTH, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER),
+                null, true);
+        styles[DrawTarget.PAINT_MINUTE_ARC] = new PaintStyle(values.getColor("analog_minutes"),
+                new BasicStroke(minutesStrokeWidth, BasicStroke.CAP_ROUND,
+                        BasicStroke.JOIN_MITER), null, true);
+        styles[DrawTarget.PAINT_RING] = new PaintStyle(values.getColor("default_dark"),
+                new BasicStroke(minutesStrokeWidth + 5, BasicStroke.CAP_ROUND,
+                        BasicStroke.JOIN_MITER), null, true);
+        styles[DrawTarget.PAINT_TIME] = new PaintStyle(values.getColor("default_bright"),
+                null, timeFont, true);
+        styles[DrawTarget.PAINT_DATE] = new PaintStyle(values.getColor("default_middle"),
+                null, dateFont, true);
+        styles[DrawTarget.PAINT_AMBIENT_TIME] = new PaintStyle(
+                values.getColor("default_bright"), null, timeFont, true);
+        styles[DrawTarget.PAINT_AMBIENT_DATE] = new PaintStyle(
+                values.getColor("default_bright_ambient"), null, dateFont, true);
+        styles[DrawTarget.PAINT_HIGHLIGHT] = new PaintStyle(
+                (highlight & 0xffffff) | HIGHLIGHT_ALPHA << 24, null, null, true);
+        styles[DrawTarget.PAINT_SECONDS] = new PaintStyle(values.getColor("default_bright"),
+                null, null, true);
+        return styles;
+    }
+}
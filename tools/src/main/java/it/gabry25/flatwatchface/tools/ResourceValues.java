@@ -0,0 +1,106 @@
+package it.gabry25.flatwatchface.tools;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+/**
+ * The colors and dimensions of the app, read from the XML files of {@code res/values}.
+ * Only plain values are supported: no references between values and no qualifiers.
+ */
+final class ResourceValues {
+    private final Map<String, Integer> mColors = new HashMap<>();
+    private final Map<String, String> mDimens = new HashMap<>();
+
+    private ResourceValues() {
+    }
+
+    static ResourceValues load(File resDir) throws IOException {
+        ResourceValues values = new ResourceValues();
+        File[] files = new File(resDir, "values").listFiles();
+        if (files == null)
+            throw new IOException("No values in " + resDir);
+        for (File file : files) {
+            if (!file.getName().endsWith(".xml"))
+                continue;
+            Element root = parse(file).getDocumentElement();
+            NodeList colors = root.getElementsByTagName("color");
+            for (int i = 0; i < colors.getLength(); ++i) {
+                Element color = (Element) colors.item(i);
+                values.mColors.put(color.getAttribute("name"),
+                        parseColor(color.getTextContent().trim()));
+            }
+            NodeList dimens = root.getElementsByTagName("dimen");
+            for (int i = 0; i < dimens.getLength(); ++i) {
+                Element dimen = (Element) dimens.item(i);
+                values.mDimens.put(dimen.getAttribute("name"), dimen.getTextContent().trim());
+            }
+        }
+        return values;
+    }
+
+    static Document parse(File file) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder().parse(file);
+        } catch (Exception e) {
+            throw new IOException("Cannot parse " + file, e);
+        }
+    }
+
+    /**
+     * Returns a color as ARGB, by name or by {@code @color/} reference.
+     */
+    int getColor(String name) {
+        Integer color = mColors.get(name.startsWith("@color/") ? name.substring(7) : name);
+        if (color == null)
+            throw new IllegalArgumentException("Unknown color " + name);
+        return color;
+    }
+
+    /**
+     * Returns a dimension in pixels, like {@code Resources.getDimension}.
+     *
+     * @param density pixels per dp
+     */
+    float getDimension(String name, float density) {
+        String value = mDimens.get(name);
+        if (value == null)
+            throw new IllegalArgumentException("Unknown dimension " + name);
+        if (value.endsWith("px"))
+            return Float.parseFloat(value.substring(0, value.length() - 2));
+        if (value.endsWith("dip"))
+            return Float.parseFloat(value.substring(0, value.length() - 3)) * density;
+        if (value.endsWith("dp") || value.endsWith("sp"))
+            return Float.parseFloat(value.substring(0, value.length() - 2)) * density;
+        throw new IllegalArgumentException("Unsupported dimension " + name + " " + value);
+    }
+
+    /**
+     * Parses {@code #rgb}, {@code #argb}, {@code #rrggbb} and {@code #aarrggbb}.
+     */
+    static int parseColor(String value) {
+        if (!value.startsWith("#"))
+            throw new IllegalArgumentException("Unsupported color " + value);
+        String hex = value.substring(1);
+        if (hex.length() <= 4) {
+            // every digit is doubled
+            StringBuilder expanded = new StringBuilder();
+            for (int i = 0; i < hex.length(); ++i)
+                expanded.append(hex.charAt(i)).append(hex.charAt(i));
+            hex = expanded.toString();
+        }
+        long color = Long.parseLong(hex, 16);
+        if (hex.length() == 6)
+            color |= 0xff000000L;
+        return (int) color;
+    }
+}
@@ -0,0 +1,242 @@
+package it.gabry25.flatwatchface.tools;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Path2D;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A vector drawing of the app, as filled Java2D paths. Supports what the drawables of the
+ * face use: {@code <path>} elements with a fill color and the SVG path commands M, L, H, V,
+ * A and Z, absolute and relative. Immutable once loaded, so it can be drawn from any thread.
+ */
+final class VectorDrawing {
+    private static final String ANDROID = "http://schemas.android.com/apk/res/android";
+
+    private final float mViewportWidth;
+    private final float mViewportHeight;
+    private final List<Path2D> mPaths = new ArrayList<>();
+    private final List<Color> mColors = new ArrayList<>();
+
+    private VectorDrawing(float viewportWidth, float viewportHeight) {
+        mViewportWidth = viewportWidth;
+        mViewportHeight = viewportHeight;
+    }
+
+    static VectorDrawing load(File file, ResourceValues values) throws IOException {
+        Element root = ResourceValues.parse(file).getDocumentElement();
+        VectorDrawing drawing = new VectorDrawing(
+                Float.parseFloat(root.getAttributeNS(ANDROID, "viewportWidth")),
+                Float.parseFloat(root.getAttributeNS(ANDROID, "viewportHeight")));
+        NodeList paths = root.getElementsByTagName("path");
+        for (int i = 0; i < paths.getLength(); ++i) {
+            Element path = (Element) paths.item(i);
+            String fill = path.getAttributeNS(ANDROID, "fillColor");
+            if (fill.isEmpty())
+                continue;
+            int color = fill.startsWith("@") ? values.getColor(fill)
+                    : ResourceValues.parseColor(fill);
+            drawing.mPaths.add(parsePath(path.getAttributeNS(ANDROID, "pathData")));
+            drawing.mColors.add(new Color(color, true));
+        }
+        return drawing;
+    }
+
+    /**
+     * Fills the paths, with the viewport scaled to {@code width} x {@code height}.
+     */
+    void draw(Graphics2D graphics, int width, int height) {
+        AffineTransform transform = graphics.getTransform();
+        graphics.scale(width / mViewportWidth, height / mViewportHeight);
+        for (int i = 0; i < mPaths.size(); ++i) {
+            graphics.setColor(mColors.get(i));
+            graphics.fill(mPaths.get(i));
+        }
+        graphics.setTransform(transform);
+    }
+
+    static Path2D parsePath(String data) {
+        Path2D.Double path = new Path2D.Double();
+        PathScanner scanner = new PathScanner(data);
+        double x = 0;
+        double y = 0;
+        double startX = 0;
+        double startY = 0;
+        char command = 0;
+        while (scanner.skipSeparators()) {
+            if (scanner.atCommand())
+                command = scanner.nextCommand();
+            else if (command == 'M' || command == 'm')
+                // coordinates after a move are implicit lines
+                command = command == 'M' ? 'L' : 'l';
+            boolean relative = Character.isLowerCase(command);
+            double baseX = relative ? x : 0;
+            double baseY = relative ? y : 0;
+            switch (Character.toUpperCase(command)) {
+                case 'M':
+                    x = baseX + scanner.nextNumber();
+                    y = baseY + scanner.nextNumber();
+                    path.moveTo(x, y);
+                    startX = x;
+                    startY = y;
+                    break;
+                case 'L':
+                    x = baseX + scanner.nextNumber();
+                    y = baseY + scanner.nextNumber();
+                    path.lineTo(x, y);
+                    break;
+                case 'H':
+                    x = baseX + scanner.nextNumber();
+                    path.lineTo(x, y);
+                    break;
+                case 'V':
+                    y = baseY + scanner.nextNumber();
+                    path.lineTo(x, y);
+                    break;
+                case 'A': {
+                    double rx = scanner.nextNumber();
+                    double ry = scanner.nextNumber();
+                    double rotation = scanner.nextNumber();
+                    boolean largeArc = scanner.nextNumber() != 0;
+                    boolean sweep = scanner.nextNumber() != 0;
+                    double endX = baseX + scanner.nextNumber();
+                    double endY = baseY + scanner.nextNumber();
+                    arcTo(path, x, y, rx, ry, rotation, largeArc, sweep, endX, endY);
+                    x = endX;
+                    y = endY;
+                    break;
+                }
+                case 'Z':
+                    path.closePath();
+                    x = startX;
+                    y = startY;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported path command " + command
+                            + " in " + data);
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Appends an SVG elliptical arc, converted from its end points to its center, see
+     * https://www.w3.org/TR/SVG/implnote.html#ArcConversionEndpointToCenter.
+     */
+    private static void arcTo(Path2D path, double x0, double y0, double rx, double ry,
+                              double rotation, boolean largeArc, boolean sweep,
+                              double x, double y) {
+        if (rx == 0 || ry == 0) {
+            path.lineTo(x, y);
+            return;
+        }
+        rx = Math.abs(rx);
+        ry = Math.abs(ry);
+        double cos = Math.cos(Math.toRadians(rotation));
+        double sin = Math.sin(Math.toRadians(rotation));
+        double halfX = (x0 - x) / 2;
+        double halfY = (y0 - y) / 2;
+        double x1 = cos * halfX + sin * halfY;
+        double y1 = -sin * halfX + cos * halfY;
+        // radii too small to reach the end point are scaled up
+        double lambda = x1 * x1 / (rx * rx) + y1 * y1 / (ry * ry);
+        if (lambda > 1) {
+            rx *= Math.sqrt(lambda);
+            ry *= Math.sqrt(lambda);
+        }
+        double numerator = rx * rx * ry * ry - rx * rx * y1 * y1 - ry * ry * x1 * x1;
+        double denominator = rx * rx * y1 * y1 + ry * ry * x1 * x1;
+        double coefficient = Math.sqrt(Math.max(0, numerator / denominator))
+                * (largeArc == sweep ? -1 : 1);
+        double centerX1 = coefficient * rx * y1 / ry;
+        double centerY1 = -coefficient * ry * x1 / rx;
+        double centerX = cos * centerX1 - sin * centerY1 + (x0 + x) / 2;
+        double centerY = sin * centerX1 + cos * centerY1 + (y0 + y) / 2;
+        double start = angle(1, 0, (x1 - centerX1) / rx, (y1 - centerY1) / ry);
+        double extent = angle((x1 - centerX1) / rx, (y1 - centerY1) / ry,
+                (-x1 - centerX1) / rx, (-y1 - centerY1) / ry);
+        if (!sweep && extent > 0)
+            extent -= 360;
+        else if (sweep && extent < 0)
+            extent += 360;
+        // Arc2D angles grow counterclockwise on screen, SVG ones clockwise
+        Arc2D arc = new Arc2D.Double(centerX - rx, centerY - ry, 2 * rx, 2 * ry,
+                -start, -extent, Arc2D.OPEN);
+        path.append(AffineTransform.getRotateInstance(Math.toRadians(rotation), centerX, centerY)
+                .createTransformedShape(arc), true);
+    }
+
+    private static double angle(double ux, double uy, double vx, double vy) {
+        return Math.toDegrees(Math.atan2(ux * vy - uy * vx, ux * vx + uy * vy));
+    }
+
+    /**
+     * Reads the commands and the numbers of a path string.
+     */
+    private static final class PathScanner {
+        private final String mData;
+        private int mPosition;
+
+        PathScanner(String data) {
+            mData = data;
+        }
+
+        /**
+         * Skips spaces and commas, and returns whether anything is left.
+         */
+        boolean skipSeparators() {
+            while (mPosition < mData.length()) {
+                char c = mData.charAt(mPosition);
+                if (c != ',' && !Character.isWhitespace(c))
+                    return true;
+                ++mPosition;
+            }
+            return false;
+        }
+
+        boolean atCommand() {
+            char c = mData.charAt(mPosition);
+            return Character.isLetter(c) && c != 'e' && c != 'E';
+        }
+
+        char nextCommand() {
+            return mData.charAt(mPosition++);
+        }
+
+        double nextNumber() {
+            skipSeparators();
+            int start = mPosition;
+            if (mPosition < mData.length()
+                    && (mData.charAt(mPosition) == '-' || mData.charAt(mPosition) == '+'))
+                ++mPosition;
+            boolean dot = false;
+            while (mPosition < mData.length()) {
+                char c = mData.charAt(mPosition);
+                if (c == '.' && !dot) {
+                    dot = true;
+                } else if (c == 'e' || c == 'E') {
+                    ++mPosition;
+                    if (mPosition < mData.length() && (mData.charAt(mPosition) == '-'
+                            || mData.charAt(mPosition) == '+'))
+                        ++mPosition;
+                    continue;
+                } else if (!Character.isDigit(c)) {
+                    break;
+                }
+                ++mPosition;
+            }
+            if (start == mPosition)
+                throw new IllegalArgumentException("Number expected at " + start + " in "
+                        + mData);
+            return Double.parseDouble(mData.substring(start, mPosition));
+        }
+    }
+}